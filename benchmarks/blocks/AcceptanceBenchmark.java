@@ -0,0 +1,326 @@
+package blocks;
+
+import java.io.CharArrayWriter;
+import java.io.IOException;
+import java.io.StringReader;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+
+import static blocks.Utils.*;
+
+/** An in-process throughput benchmark that plays acceptance-test inputs
+ *  (testing/*.in) through a Controller, with commands and hands read from
+ *  memory and output written to memory.  Each input is played several
+ *  times to warm up, and then several more times while measuring overall
+ *  throughput, the latency of each kind of command, and the memory
+ *  allocated per command.  An input may be scaled up synthetically by
+ *  playing several copies of it in sequence as one session.
+ *
+ *  The latency of a command is the time from when the Controller
+ *  receives it to when the Controller asks for the next one, and so
+ *  includes dealing any hand read as a result, but not reading the
+ *  command itself.  The final command of a session (normally QUIT) is
+ *  not timed.  Throughput is measured over whole sessions, and so
+ *  includes everything.
+ *  @author Matilda Antwi
+ */
+public class AcceptanceBenchmark {
+
+    /** Run the benchmark on the input files named in ARGS, which may also
+     *  contain the options --scale=NUM (play NUM copies of each input as
+     *  one session; default 1), --warmup=NUM (unmeasured sessions;
+     *  default 20), and --runs=NUM (measured sessions; default 20).
+     *  When an input is not scaled, its output is compared with the
+     *  corresponding .std file, if there is one.  Results are printed on
+     *  the standard output. */
+    public static void main(String... args) {
+        int scale = 1, warmup = DEFAULT_WARMUP, runs = DEFAULT_RUNS;
+        int numFiles = 0;
+        try {
+            for (String arg : args) {
+                if (arg.startsWith("--scale=")) {
+                    scale = Integer.parseInt(arg.substring(8));
+                } else if (arg.startsWith("--warmup=")) {
+                    warmup = Integer.parseInt(arg.substring(9));
+                } else if (arg.startsWith("--runs=")) {
+                    runs = Integer.parseInt(arg.substring(7));
+                } else if (arg.startsWith("--")) {
+                    throw badArgs("unknown option: %s", arg);
+                } else {
+                    numFiles += 1;
+                }
+            }
+            if (numFiles == 0 || scale <= 0 || warmup < 0 || runs <= 0) {
+                throw badArgs("Usage: java blocks.AcceptanceBenchmark "
+                              + "[ --scale=NUM ] [ --warmup=NUM ] "
+                              + "[ --runs=NUM ] FILE...");
+            }
+            for (String arg : args) {
+                if (!arg.startsWith("--")) {
+                    AcceptanceBenchmark bench =
+                        new AcceptanceBenchmark(Paths.get(arg), scale);
+                    bench.run(warmup, runs);
+                    System.out.print(bench.report());
+                }
+            }
+        } catch (NumberFormatException excp) {
+            System.err.printf("Error: bad numeral: %s%n", excp.getMessage());
+            System.exit(1);
+        } catch (IllegalArgumentException | IllegalStateException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+            System.exit(1);
+        }
+    }
+
+    /** A benchmark of the acceptance-test input in the file FILE, with
+     *  SCALE copies of it played in each session. */
+    AcceptanceBenchmark(Path file, int scale) {
+        _name = file.getFileName().toString();
+        _scale = scale;
+        String input;
+        try {
+            input = new String(Files.readAllBytes(file));
+            String name = _name.replaceFirst("\\.in$", "") + ".std";
+            Path std = file.resolveSibling(name);
+            if (scale == 1 && !name.equals(_name) && Files.exists(std)) {
+                _expected = new String(Files.readAllBytes(std));
+            }
+        } catch (IOException excp) {
+            throw badArgs("could not read %s", file);
+        }
+        _input = scaled(input, scale);
+    }
+
+    /** Play WARMUP unmeasured sessions and then RUNS measured ones.  At
+     *  least one unmeasured session is played, to size the records of
+     *  latencies. */
+    void run(int warmup, int runs) {
+        _timer.reset(null);
+        play();
+        if (_expected != null && !_expected.equals(_output.toString())) {
+            _mismatch = true;
+        }
+        _timer.reset(_timer.counts(runs));
+        for (int i = 1; i < warmup; i += 1) {
+            _timer.clear();
+            play();
+        }
+        _timer.clear();
+        _runs = runs;
+        long allocated0 = allocatedBytes();
+        long start = System.nanoTime();
+        for (int i = 0; i < runs; i += 1) {
+            play();
+        }
+        _elapsedNanos = System.nanoTime() - start;
+        long allocated1 = allocatedBytes();
+        _allocated = allocated0 < 0 ? -1 : allocated1 - allocated0;
+    }
+
+    /** Return a printable summary of the results of the last call to
+     *  run. */
+    String report() {
+        long commands = _timer.total();
+        double seconds = _elapsedNanos / 1e9;
+        StringBuilder out = new StringBuilder();
+        out.append(msg("%s%s: %d commands per session, %d sessions%s%n",
+                       _name, _scale == 1 ? "" : msg(" (x%d)", _scale),
+                       commands / Math.max(1, _runs), _runs,
+                       _mismatch ? "  ** OUTPUT DIFFERS FROM .std **" : ""));
+        out.append(msg("  Throughput: %.1f commands/s  Allocation: %s%n",
+                       commands / seconds,
+                       _allocated < 0 ? "unavailable"
+                       : msg("%.1f bytes/command",
+                             (double) _allocated / Math.max(1, commands))));
+        out.append(msg("  %-8s %10s %12s %12s%n",
+                       "Command", "Count", "p50 (us)", "p99 (us)"));
+        for (int kind = 0; kind < NUM_KINDS; kind += 1) {
+            long[] latencies = _timer.latencies(kind);
+            int n = latencies.length;
+            if (n > 0) {
+                Arrays.sort(latencies);
+                out.append(msg("  %-8s %10d %12.3f %12.3f%n", kindName(kind),
+                               n, latencies[n / 2] / 1e3,
+                               latencies[Math.min(n - 1, n * 99 / 100)]
+                               / 1e3));
+            }
+        }
+        return out.toString();
+    }
+
+    /** Play one session of _input, leaving its output in _output. */
+    private void play() {
+        _output.reset();
+        TextSource input = new TextSource(new StringReader(_input), null);
+        _timer.setSource(input);
+        Controller controller =
+            new Controller(null, _timer, input, false, true);
+        controller.setOutput(_sink);
+        while (controller.active()) {
+            controller.playPuzzle();
+        }
+    }
+
+    /** Return INPUT repeated SCALE times, with each copy but the last
+     *  ending with NEW rather than QUIT, so that the copies are played
+     *  as successive puzzles in one session. */
+    private static String scaled(String input, int scale) {
+        if (scale == 1) {
+            return input;
+        }
+        String continued = input.replaceFirst("QUIT\\s*$", "NEW\n");
+        StringBuilder result = new StringBuilder();
+        for (int i = 1; i < scale; i += 1) {
+            result.append(continued);
+        }
+        return result.append(input).toString();
+    }
+
+    /** Return the number of bytes allocated so far by the current thread,
+     *  or -1 if the JVM cannot tell. */
+    private static long allocatedBytes() {
+        java.lang.management.ThreadMXBean bean =
+            ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) bean)
+                .getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return -1;
+    }
+
+    /** Return a printable name for commands of kind KIND (see
+     *  CommandParser). */
+    private static String kindName(int kind) {
+        switch (kind) {
+        case CommandParser.BAD:
+            return "(bad)";
+        case CommandParser.EMPTY:
+            return "(empty)";
+        default:
+            return CommandParser.keyword(kind);
+        }
+    }
+
+    /** A CommandSource that passes on the commands of another, timing the
+     *  interval between delivering each command and the next request. */
+    private static class Timer implements CommandSource {
+
+        /** Begin timing commands from SOURCE. */
+        void setSource(CommandSource source) {
+            _source = source;
+            _kind = -1;
+        }
+
+        @Override
+        public String getCommand() {
+            long now = System.nanoTime();
+            if (_kind >= 0) {
+                record(_kind, now - _start);
+            }
+            String command = _source.getCommand();
+            _kind = _parser.parse(command);
+            _start = System.nanoTime();
+            return command;
+        }
+
+        @Override
+        public boolean interactive() {
+            return false;
+        }
+
+        /** Record latency LATENCY for a command of kind KIND. */
+        private void record(int kind, long latency) {
+            if (_latencies[kind] == null) {
+                _counts[kind] += 1;
+            } else {
+                _latencies[kind][_counts[kind]] = latency;
+                _counts[kind] += 1;
+            }
+        }
+
+        /** Forget all recorded latencies and counts.  Until the next
+         *  call, record up to CAPACITY[k] latencies for commands of kind
+         *  k, or only count them if CAPACITY is null. */
+        void reset(int[] capacity) {
+            for (int kind = 0; kind < NUM_KINDS; kind += 1) {
+                _latencies[kind] =
+                    capacity == null ? null : new long[capacity[kind]];
+            }
+            clear();
+        }
+
+        /** Forget all recorded latencies and counts. */
+        void clear() {
+            Arrays.fill(_counts, 0);
+        }
+
+        /** Return the numbers of commands of each kind recorded since the
+         *  last reset, each multiplied by RUNS. */
+        int[] counts(int runs) {
+            int[] result = new int[NUM_KINDS];
+            for (int kind = 0; kind < NUM_KINDS; kind += 1) {
+                result[kind] = _counts[kind] * runs;
+            }
+            return result;
+        }
+
+        /** Return the total number of commands timed since the last
+         *  clear. */
+        long total() {
+            return Arrays.stream(_counts).sum();
+        }
+
+        /** Return the latencies recorded for commands of kind KIND since
+         *  the last clear. */
+        long[] latencies(int kind) {
+            return _latencies[kind] == null ? new long[0]
+                : Arrays.copyOf(_latencies[kind], _counts[kind]);
+        }
+
+        /** Source of the commands. */
+        private CommandSource _source;
+        /** Parses commands to determine their kinds. */
+        private CommandParser _parser = new CommandParser();
+        /** Kind of the last command delivered, or -1 if none. */
+        private int _kind;
+        /** Time at which the last command was delivered. */
+        private long _start;
+        /** Recorded latencies, in nanoseconds, for each kind of command. */
+        private long[][] _latencies = new long[NUM_KINDS][];
+        /** Number of latencies recorded for each kind of command. */
+        private int[] _counts = new int[NUM_KINDS];
+    }
+
+    /** Default numbers of unmeasured and measured sessions. */
+    private static final int DEFAULT_WARMUP = 20, DEFAULT_RUNS = 20;
+
+    /** Number of kinds of command (see CommandParser). */
+    private static final int NUM_KINDS = CommandParser.BOARD + 1;
+
+    /** Name of the input file. */
+    private String _name;
+    /** The input played in each session. */
+    private String _input;
+    /** Number of copies of the input file in _input. */
+    private int _scale;
+    /** Expected output of a session, or null if unknown. */
+    private String _expected;
+    /** True iff the output differed from _expected. */
+    private boolean _mismatch;
+    /** Output of the last session. */
+    private CharArrayWriter _output = new CharArrayWriter();
+    /** Buffers output to _output.  It is shared by all sessions, so that
+     *  its buffer is not counted as allocation by each. */
+    private WriterSink _sink = new WriterSink(_output);
+    /** Times the commands. */
+    private Timer _timer = new Timer();
+    /** Number of measured sessions. */
+    private int _runs;
+    /** Duration of the measured sessions, in nanoseconds. */
+    private long _elapsedNanos;
+    /** Bytes allocated during the measured sessions, or -1 if unknown. */
+    private long _allocated;
+}
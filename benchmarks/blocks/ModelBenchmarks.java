@@ -0,0 +1,179 @@
+package blocks;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/** JMH benchmarks of the Model operations used on each move, on square
+ *  boards of several sizes, each initially filled at random to one of
+ *  several densities (with no line full).  Benchmarks that change the
+ *  board save the new state and restore the old one with undo, so that
+ *  every invocation starts from the same position; their names say
+ *  what they include.
+ *  @author Matilda Antwi
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ModelBenchmarks {
+
+    /** Width and height of the board. */
+    @Param({ "8", "16", "64" })
+    public int size;
+
+    /** Fraction of the cells initially filled. */
+    @Param({ "0.0", "0.3", "0.6" })
+    public double density;
+
+    /** Set up _model with a board of the requested size and density, a
+     *  hand, and two saved states, of which the second has row 0 and
+     *  column 0 filled; and choose a piece and position for placing. */
+    @Setup
+    public void setup() {
+        Random random = new Random(SEED);
+        _model = new Model(size, size);
+        Piece cell = Piece.parse("*");
+        for (int r = 1; r < size; r += 1) {
+            for (int c = 1; c < size; c += 1) {
+                if (random.nextDouble() < density
+                    && _model.rowCount(r) < size - 2
+                    && _model.columnCount(c) < size - 2) {
+                    _model.place(cell, r, c);
+                }
+            }
+        }
+        _puzzles = new PuzzleGenerator(SEED);
+        _puzzles.deal(_model, Controller.DEFAULT_HAND_SIZE);
+        _model.pushState();
+        for (int i = 1; i < size; i += 1) {
+            if (!_model.get(0, i)) {
+                _model.place(cell, 0, i);
+            }
+            if (!_model.get(i, 0)) {
+                _model.place(cell, i, 0);
+            }
+        }
+        _model.place(cell, 0, 0);
+        _model.pushState();
+
+        _piece = _pieces[0];
+        for (Piece piece : _pieces) {
+            if (_model.placeable(piece)) {
+                _piece = piece;
+                break;
+            }
+        }
+        for (int r = 0; r < size; r += 1) {
+            for (int c = 0; c < size; c += 1) {
+                if (_model.placeable(_piece, r, c)) {
+                    _row = r;
+                    _col = c;
+                    return;
+                }
+            }
+        }
+    }
+
+    /** Search for any placement of each of several pieces. */
+    @Benchmark
+    public void placeable(Blackhole sink) {
+        for (Piece piece : _pieces) {
+            sink.consume(_model.placeable(piece));
+        }
+    }
+
+    /** Place a piece and save the state, then undo the move, as the
+     *  Controller does for SET and UNDO commands. */
+    @Benchmark
+    public void placeUndo() {
+        _model.place(_piece, _row, _col);
+        _model.pushState();
+        _model.undo();
+    }
+
+    /** Clear the full row and column and save the state, then undo the
+     *  change. */
+    @Benchmark
+    public int clearFilledLinesUndo() {
+        _model.clearFilledLines();
+        _model.pushState();
+        int score = _model.score();
+        _model.undo();
+        return score;
+    }
+
+    /** Determine which lines placing a piece would fill, as when
+     *  previewing a dragged piece. */
+    @Benchmark
+    public int previewClears() {
+        return _model.previewClears(_piece, _row, _col);
+    }
+
+    /** Copy out the row and column counts. */
+    @Benchmark
+    public int[][] rowColumnCounts() {
+        return _model.rowColumnCounts();
+    }
+
+    /** Undo to the first saved state and redo back to the second. */
+    @Benchmark
+    public void undoRedo() {
+        _model.undo();
+        _model.redo();
+    }
+
+    /** Determine whether the round is over.  Since the hand is not
+     *  changed, this measures the cached answer except on the first
+     *  call. */
+    @Benchmark
+    public boolean roundOver() {
+        return _model.roundOver();
+    }
+
+    /** Determine whether the round is over after dealing a new hand, so
+     *  that nothing is cached. */
+    @Benchmark
+    public boolean dealRoundOver() {
+        _puzzles.deal(_model, Controller.DEFAULT_HAND_SIZE);
+        return _model.roundOver();
+    }
+
+    /** Deal a new hand. */
+    @Benchmark
+    public void deal() {
+        _puzzles.deal(_model, Controller.DEFAULT_HAND_SIZE);
+    }
+
+    /** Seed for filling boards and dealing hands. */
+    private static final long SEED = 42;
+
+    /** The board being measured. */
+    private Model _model;
+    /** Source of hands. */
+    private PuzzleGenerator _puzzles;
+    /** Pieces tried by placeable, from smallest to largest. */
+    private Piece[] _pieces = {
+        Piece.parse("*"), Piece.parse("** **"), Piece.parse(".*. *** .*."),
+        Piece.parse("*** *** ***"), Piece.parse("**** **** **** ****")
+    };
+    /** A piece that may be placed at (_row, _col) in the second saved
+     *  state. */
+    private Piece _piece;
+    /** Position for placing _piece. */
+    private int _row, _col;
+}
@@ -91,31 +91,26 @@ class BoardWidget extends Pad {
 
     /** Set the cell colors on G from the model. */
     private void drawCells(Graphics2D g) {
-        Piece p = _model.piece(_selectedPiece);
+        Piece p = _shown.piece(_selectedPiece);
         int srow = refRow(p, _sx, _sy),
             scol = refCol(p, _sx, _sy);
-        int[][] counts;
+        int clears = preview(p, srow, scol);
         Style style;
 
-        counts = null;
         style = NORMAL;
-        if (_model.placeable(p, srow, scol)) {
-            _model.pushState();
-            _model.place(p, srow, scol);
-            counts = _model.rowColumnCounts();
-            _model.undo();
+        if (clears != UNPLACEABLE) {
             drawGridPiece(g, p, PREVIEW, srow, scol);
-        } else if (_model.roundOver()) {
+        } else if (_shown.roundOver()) {
             style = FADE_OUT;
         }
 
         g.setColor(FILLED_COLOR);
         for (int row = 0; row < _height; row += 1) {
             for (int col = 0; col < _width; col += 1) {
-                if (_model.get(row, col)) {
-                    if (counts != null
-                        && (counts[0][row] == _model.width()
-                            || counts[1][col] == _model.height())) {
+                if (_shown.get(row, col)) {
+                    if (clears != UNPLACEABLE
+                        && (Model.clearsRow(clears, row - srow)
+                            || Model.clearsColumn(clears, col - scol))) {
                         drawGridPiece(g, ONE_CELL, REMOVEABLE, row, col);
                     } else {
                         drawGridPiece(g, ONE_CELL, style, row, col);
@@ -125,13 +120,32 @@ class BoardWidget extends Pad {
         }
     }
 
+    /** Return UNPLACEABLE if PIECE may not be placed with its reference
+     *  point at (ROW, COL) on the displayed board, and otherwise the rows
+     *  and columns that placing it would fill, as for
+     *  Model.previewClears.  The result is remembered until the
+     *  arguments or the displayed board change, so that repainting while
+     *  a piece is dragged costs little. */
+    private int preview(Piece piece, int row, int col) {
+        if (piece != _previewPiece || row != _previewRow
+            || col != _previewCol || _shown != _previewed) {
+            _previewPiece = piece;
+            _previewRow = row;
+            _previewCol = col;
+            _previewed = _shown;
+            _preview = _shown.placeable(piece, row, col)
+                ? _shown.previewClears(piece, row, col) : UNPLACEABLE;
+        }
+        return _preview;
+    }
+
     /** Draw the remaining Pieces of the hand on G. */
     private void drawHand(Graphics2D g) {
-        for (int k = 0; k < _model.handSize(); k += 1) {
-            Piece p = _model.piece(k);
+        for (int k = 0; k < _shown.handSize(); k += 1) {
+            Piece p = _shown.piece(k);
             if (p != null && k != _selectedPiece) {
                 drawPiece(g, p,
-                          _model.placeable(p) ? IN_HAND : IN_HAND_UNAVAILABLE,
+                          _shown.placeable(k) ? IN_HAND : IN_HAND_UNAVAILABLE,
                           hx(k), hy(k));
             }
         }
@@ -142,9 +156,10 @@ class BoardWidget extends Pad {
         if (_selectedPiece == -1) {
             return;
         }
-        Piece p = _model.piece(_selectedPiece);
-        assert p != null;
-        drawPiece(g, p, FLOATING, _sx, _sy);
+        Piece p = _shown.piece(_selectedPiece);
+        if (p != null) {
+            drawPiece(g, p, FLOATING, _sx, _sy);
+        }
     }
 
     /** Draw PIECE on G at with format STYLE so that its center
@@ -219,7 +234,10 @@ class BoardWidget extends Pad {
     }
 
     @Override
-    public synchronized void paintComponent(Graphics2D g) {
+    public void paintComponent(Graphics2D g) {
+        if (!showCurrent()) {
+            return;
+        }
         g.setRenderingHint(KEY_ANTIALIASING, VALUE_ANTIALIAS_ON);
         g.setColor(BACKGROUND_COLOR);
         g.fillRect(0, 0, _boardWidth, _boardHeight);
@@ -232,17 +250,17 @@ class BoardWidget extends Pad {
 
     /** Handle mouse-pressed event E, selecting a Piece from the hand, if
      *  appropriate. */
-    private synchronized void mousePressed(String unused, MouseEvent e) {
-        if (_model == null) {
+    private void mousePressed(String unused, MouseEvent e) {
+        if (!showCurrent()) {
             return;
         }
         _selectedPiece = pieceNumber(e.getX(), e.getY());
-        if (_selectedPiece != -1 && !_model.placeable(_selectedPiece)) {
+        if (_selectedPiece != -1 && !_shown.placeable(_selectedPiece)) {
             _selectedPiece = -1;
         }
 
         if (_selectedPiece != -1) {
-            Piece p = _model.piece(_selectedPiece);
+            Piece p = _shown.piece(_selectedPiece);
             _sx = sx(p, e);
             _sy = sy(p, e);
         }
@@ -254,15 +272,15 @@ class BoardWidget extends Pad {
 
     /** Handle mouse-released event E, selecting a Piece from the hand, if
      *  appropriate. */
-    private synchronized void mouseReleased(String unused, MouseEvent e) {
-        if (_model == null) {
+    private void mouseReleased(String unused, MouseEvent e) {
+        if (!showCurrent()) {
             return;
         }
 
         if (_selectedPiece >= 0) {
-            Piece p = _model.piece(_selectedPiece);
+            Piece p = _shown.piece(_selectedPiece);
             int col = refCol(p, _sx, _sy), row = refRow(p, _sx, _sy);
-            if (_model.placeable(_selectedPiece, row, col)) {
+            if (_shown.placeable(_selectedPiece, row, col)) {
                 _commands.offer(String.format("SET %d %d %d",
                                               _selectedPiece, row, col));
             }
@@ -277,8 +295,8 @@ class BoardWidget extends Pad {
 
     /** Handle mouse-dragged event E, selecting a Piece from the hand, if
      *  appropriate. */
-    private synchronized void mouseDragged(String unused, MouseEvent e) {
-        if (_model == null || _selectedPiece == -1) {
+    private void mouseDragged(String unused, MouseEvent e) {
+        if (!showCurrent() || _shown.piece(_selectedPiece) == null) {
             return;
         }
         _numDrags += 1;
@@ -286,7 +304,7 @@ class BoardWidget extends Pad {
             return;
         }
 
-        Piece p = _model.piece(_selectedPiece);
+        Piece p = _shown.piece(_selectedPiece);
         _sx = sx(p, e);
         _sy = sy(p, e);
         repaint();
@@ -294,19 +312,47 @@ class BoardWidget extends Pad {
               _sx, _sy, refRow(p, _sx, _sy), refCol(p, _sx, _sy));
     }
 
-    /** Revise the displayed board according to MODEL. */
-    synchronized void update(Model model) {
-        _model = new Model(model);
-        _width = model.width();
-        _height = model.height();
-        _boardWidth = _width * CELL_SIDE + 2 * OFFSET;
-        _boardHeight = (_height + Piece.MAX_PIECE_HEIGHT) * CELL_SIDE
-            + 2 * OFFSET + HAND_VERT_SEP;
-        setPreferredSize(_boardWidth, _boardHeight);
-        setMinimumSize(_boardWidth, _boardHeight);
+    /** Revise the displayed board according to MODEL.  Called by the
+     *  thread that owns MODEL, which takes a snapshot of it for the
+     *  event-dispatching thread to display. */
+    void update(Model model) {
+        _snapshot = model.snapshot();
+        int width = boardWidth(model.width()),
+            height = boardHeight(model.height());
+        setPreferredSize(width, height);
+        setMinimumSize(width, height);
         repaint();
     }
 
+    /** Make the latest snapshot passed to update the one being displayed,
+     *  if it is not already, and return true iff there is one.  Called
+     *  on the event-dispatching thread, which alone uses _shown and the
+     *  dimensions derived from it. */
+    private boolean showCurrent() {
+        RenderSnapshot snapshot = _snapshot;
+        if (snapshot != _shown && snapshot != null) {
+            _shown = snapshot;
+            _width = snapshot.width();
+            _height = snapshot.height();
+            _boardWidth = boardWidth(_width);
+            _boardHeight = boardHeight(_height);
+        }
+        return _shown != null;
+    }
+
+    /** Return the width in pixels of the display of a board with WIDTH
+     *  columns. */
+    private static int boardWidth(int width) {
+        return width * CELL_SIDE + 2 * OFFSET;
+    }
+
+    /** Return the height in pixels of the display of a board with HEIGHT
+     *  rows and of the hand below it. */
+    private static int boardHeight(int height) {
+        return (height + Piece.MAX_PIECE_HEIGHT) * CELL_SIDE
+            + 2 * OFFSET + HAND_VERT_SEP;
+    }
+
     /** Return pixel coordinates of the top of row ROW relative to window. */
     private int cy(int row) {
         return OFFSET + row * CELL_SIDE;
@@ -382,7 +428,7 @@ class BoardWidget extends Pad {
     /** Return true iff PIECE may be placed at the grid position corresponding
      *  to having the center of PIECE at (X, Y). */
     private boolean placeableAt(Piece piece, int x, int y) {
-        return _model.placeable(piece,
+        return _shown.placeable(piece,
                                 refRow(piece, x, y), refCol(piece, x, y));
     }
 
@@ -392,7 +438,7 @@ class BoardWidget extends Pad {
         if (y < _height * CELL_SIDE + HAND_VERT_SEP) {
             return -1;
         }
-        int k = 9 * _model.handSize() * x / _boardWidth;
+        int k = 9 * _shown.handSize() * x / _boardWidth;
         if (k % 9 == 0 || k % 9 == 8) {
             return -1;
         } else {
@@ -400,14 +446,16 @@ class BoardWidget extends Pad {
         }
     }
 
-    /** Number of rows and of columns. */
+    /** Number of rows and of columns of _shown. */
     private int _height, _width;
 
     /** Queue on which to post commands (from mouse clicks). */
     private ArrayBlockingQueue<String> _commands;
 
-    /** Current model being displayed. */
-    private Model _model;
+    /** Snapshot of the current model, as last passed to update. */
+    private volatile RenderSnapshot _snapshot;
+    /** The snapshot being displayed, or null if none. */
+    private RenderSnapshot _shown;
     /** Length (in pixels) of the side of the board. */
     private int _boardWidth, _boardHeight;
     /** Index of currently selected Piece from hand, or -1 if none. */
@@ -419,4 +467,14 @@ class BoardWidget extends Pad {
     private static final Piece ONE_CELL = new Piece("*");
     /** Number of dragging events. */
     private int _numDrags;
+    /** Result of preview denoting an illegal placement. */
+    private static final int UNPLACEABLE = -1;
+    /** The arguments and board of the last call to preview. */
+    private Piece _previewPiece;
+    /** The arguments and board of the last call to preview. */
+    private int _previewRow, _previewCol;
+    /** The arguments and board of the last call to preview. */
+    private RenderSnapshot _previewed;
+    /** The result of the last call to preview. */
+    private int _preview;
 }
@@ -0,0 +1,163 @@
+package blocks;
+
+/** A tokenizer for the text commands described in CommandSource.  Parsing
+ *  a command determines its kind and converts its numeric operands to
+ *  primitive values, without creating any intermediate objects.  A parser
+ *  holds the operands of the last command parsed, and so may not be
+ *  shared between threads.
+ *  @author Matilda Antwi
+ */
+class CommandParser {
+
+    /** Kinds of command returned by parse.  EMPTY denotes a blank command
+     *  and BAD denotes an unknown or malformed one. */
+    static final int
+        BAD = 0, EMPTY = 1, QUIT = 2, NEW = 3, SIZE = 4, SET = 5, SEED = 6,
+        UNDO = 7, REDO = 8, BOARD = 9;
+
+    /** Parse COMMAND, returning its kind (one of the constants above).
+     *  Afterwards, intArg(i) and longArg(i) return its operands.  Extra
+     *  words following the operands are ignored. */
+    int parse(CharSequence command) {
+        _command = command;
+        _pos = 0;
+        _numArgs = 0;
+        skipBlanks();
+        if (_pos == command.length()) {
+            return EMPTY;
+        }
+        int kind = keyword();
+        for (int i = 0; i < NUM_OPERANDS[kind]; i += 1) {
+            if (!operand(kind == SEED ? Long.MAX_VALUE : Integer.MAX_VALUE)) {
+                return BAD;
+            }
+        }
+        return kind;
+    }
+
+    /** Return operand #I (numbering from 0) of the last command parsed, as
+     *  an int.  Requires that the command has such an operand, and that it
+     *  is in the range of int. */
+    int intArg(int i) {
+        assert i < _numArgs;
+        return (int) _args[i];
+    }
+
+    /** Return operand #I of the last command parsed.  Requires that the
+     *  command has such an operand. */
+    long longArg(int i) {
+        assert i < _numArgs;
+        return _args[i];
+    }
+
+    /** Return the name of commands of kind KIND (empty for EMPTY). */
+    static String keyword(int kind) {
+        return kind == EMPTY ? "" : KEYWORDS[kind];
+    }
+
+    /** Return the number of operands of commands of kind KIND. */
+    static int operands(int kind) {
+        return NUM_OPERANDS[kind];
+    }
+
+    /** Consume the first word of the command and return the kind of
+     *  command it denotes, or BAD if it is not a command name. */
+    private int keyword() {
+        int start = _pos;
+        skipWord();
+        int len = _pos - start;
+        for (int kind = QUIT; kind < KEYWORDS.length; kind += 1) {
+            String keyword = KEYWORDS[kind];
+            if (keyword.length() == len && matches(keyword, start)) {
+                return kind;
+            }
+        }
+        return BAD;
+    }
+
+    /** Return true iff the characters of the command starting at START
+     *  are those of WORD. */
+    private boolean matches(String word, int start) {
+        for (int i = 0; i < word.length(); i += 1) {
+            if (_command.charAt(start + i) != word.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Consume the next word of the command, which must be an optionally
+     *  signed decimal numeral whose value is between -MAX - 1 and MAX,
+     *  and append its value to _args.  Returns false if there is no such
+     *  word. */
+    private boolean operand(long max) {
+        skipBlanks();
+        int start = _pos;
+        skipWord();
+        int p = start;
+        boolean negative = false;
+        if (p < _pos && (_command.charAt(p) == '-'
+                         || _command.charAt(p) == '+')) {
+            negative = _command.charAt(p) == '-';
+            p += 1;
+        }
+        if (p == _pos) {
+            return false;
+        }
+        long limit = negative ? -max - 1 : -max;
+        long value;
+        value = 0;
+        for (; p < _pos; p += 1) {
+            int digit = Character.digit(_command.charAt(p), RADIX);
+            if (digit < 0 || value < (limit + digit) / RADIX) {
+                return false;
+            }
+            value = value * RADIX - digit;
+        }
+        _args[_numArgs] = negative ? value : -value;
+        _numArgs += 1;
+        return true;
+    }
+
+    /** Advance past any whitespace in the command. */
+    private void skipBlanks() {
+        while (_pos < _command.length()
+               && Character.isWhitespace(_command.charAt(_pos))) {
+            _pos += 1;
+        }
+    }
+
+    /** Advance past any non-whitespace characters in the command. */
+    private void skipWord() {
+        while (_pos < _command.length()
+               && !Character.isWhitespace(_command.charAt(_pos))) {
+            _pos += 1;
+        }
+    }
+
+    /** KEYWORDS[k] is the name of commands of kind k, for k >= QUIT. */
+    private static final String[] KEYWORDS = {
+        null, null, "QUIT", "NEW", "SIZE", "SET", "SEED", "UNDO", "REDO",
+        "BOARD"
+    };
+
+    /** NUM_OPERANDS[k] is the number of operands of commands of kind k. */
+    private static final int[] NUM_OPERANDS = {
+        0, 0, 0, 0, 3, 3, 1, 0, 0, 0
+    };
+
+    /** Radix of numerals. */
+    private static final int RADIX = 10;
+
+    /** Maximum number of operands of any command. */
+    private static final int MAX_OPERANDS = 3;
+
+    /** The command being parsed. */
+    private CharSequence _command;
+    /** Position of the next character of _command to be parsed. */
+    private int _pos;
+    /** Operands of the last command parsed. */
+    private long[] _args = new long[MAX_OPERANDS];
+    /** Number of valid entries in _args. */
+    private int _numArgs;
+}
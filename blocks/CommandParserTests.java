@@ -0,0 +1,74 @@
+package blocks;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+/** Tests of the CommandParser class.
+ *  @author Matilda Antwi
+ */
+public class CommandParserTests {
+
+    @Rule
+    public Timeout methodTimeout = Timeout.seconds(1);
+
+    /** Check the parsing of well-formed commands. */
+    @Test
+    public void commandTest() {
+        CommandParser p = new CommandParser();
+        assertEquals("SET not recognized",
+                     CommandParser.SET, p.parse("SET 2 10 7"));
+        assertEquals("Wrong SET piece", 2, p.intArg(0));
+        assertEquals("Wrong SET row", 10, p.intArg(1));
+        assertEquals("Wrong SET column", 7, p.intArg(2));
+        assertEquals("SIZE not recognized",
+                     CommandParser.SIZE, p.parse("SIZE\t9  8 4 extra"));
+        assertEquals("Wrong SIZE width", 9, p.intArg(0));
+        assertEquals("Wrong SIZE hand size", 4, p.intArg(2));
+        assertEquals("SEED not recognized",
+                     CommandParser.SEED, p.parse("SEED 123456789012"));
+        assertEquals("Wrong SEED value", 123456789012L, p.longArg(0));
+        assertEquals("Signed operands not accepted",
+                     CommandParser.SET, p.parse("SET -1 +2 0"));
+        assertEquals("Wrong negative operand", -1, p.intArg(0));
+        assertEquals("Wrong positive operand", 2, p.intArg(1));
+        assertEquals("QUIT not recognized",
+                     CommandParser.QUIT, p.parse("QUIT"));
+        assertEquals("NEW not recognized", CommandParser.NEW, p.parse("NEW"));
+        assertEquals("UNDO not recognized",
+                     CommandParser.UNDO, p.parse("UNDO"));
+        assertEquals("REDO not recognized",
+                     CommandParser.REDO, p.parse("REDO"));
+        assertEquals("BOARD not recognized",
+                     CommandParser.BOARD, p.parse("BOARD"));
+        assertEquals("Empty command not recognized",
+                     CommandParser.EMPTY, p.parse(""));
+        assertEquals("Blank command not recognized",
+                     CommandParser.EMPTY, p.parse("  "));
+    }
+
+    /** Check that unknown and malformed commands are rejected. */
+    @Test
+    public void badCommandTest() {
+        CommandParser p = new CommandParser();
+        for (String cmnd : new String[] {
+                "FOO", "SETS 1 2 3", "SE 1 2 3", "set 0 0 0", "SET 1 2",
+                "SET 1 x 2", "SET 1 2 3x", "SET 1 - 2", "SET 2147483648 0 0",
+                "SET -2147483649 0 0", "SEED", "SEED 99999999999999999999",
+                "SEED -9223372036854775809", "SIZE 1 2 +" }) {
+            assertEquals("accepted " + cmnd, CommandParser.BAD,
+                         p.parse(cmnd));
+        }
+        assertEquals("Largest int rejected",
+                     CommandParser.SET, p.parse("SET 2147483647 0 0"));
+        assertEquals("Wrong largest int", Integer.MAX_VALUE, p.intArg(0));
+        assertEquals("Smallest int rejected",
+                     CommandParser.SET, p.parse("SET -2147483648 0 0"));
+        assertEquals("Wrong smallest int", Integer.MIN_VALUE, p.intArg(0));
+        assertEquals("Smallest long rejected", CommandParser.SEED,
+                     p.parse("SEED -9223372036854775808"));
+        assertEquals("Wrong smallest long", Long.MIN_VALUE, p.longArg(0));
+    }
+
+}
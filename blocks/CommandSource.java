@@ -23,4 +23,11 @@ interface CommandSource {
      *  whitespace and converted to upper case. */
     String getCommand();
 
+    /** Returns true iff commands are typed by a person, who should see
+     *  all output resulting from previous commands before being asked
+     *  for another. */
+    default boolean interactive() {
+        return true;
+    }
+
 }
@@ -1,5 +1,7 @@
 package blocks;
 
+import java.io.OutputStreamWriter;
+
 import static blocks.Utils.*;
 
 /** The input/output and GUI controller for play of a Signpost puzzle.
@@ -30,58 +32,114 @@ public class Controller {
         setType(DEFAULT_SIZE, DEFAULT_SIZE, DEFAULT_HAND_SIZE);
     }
 
+    /** Limit the number of moves that may be undone in each puzzle to
+     *  DEPTH, or remove the limit if DEPTH is 0. */
+    void setHistoryLimit(int depth) {
+        if (depth < 0) {
+            throw badArgs("negative history limit");
+        }
+        _historyLimit = depth;
+    }
+
     /** Return true iff we have not received a Quit command. */
     boolean active() {
         return _active;
     }
 
+    /** Send all subsequent output (other than error messages) to OUT.
+     *  Initially, output goes to the standard output through a
+     *  WriterSink. */
+    void setOutput(OutputSink out) {
+        _out = out;
+    }
+
+    /** Record all subsequent hands and commands with RECORDER, or stop
+     *  recording if RECORDER is null. */
+    void setRecorder(ReplayRecorder recorder) {
+        _recorder = recorder;
+    }
+
     /** Clear the board and play one puzzle, until receiving a quit,
      *  new-game, or parameter-change request.  Update the viewer with
-     *  each visible modification to the model. */
+     *  each visible modification to the model.  All output is flushed
+     *  on return, and also before each command if the command source is
+     *  interactive. */
     void playPuzzle() {
+        try {
+            play();
+        } finally {
+            _out.flush();
+            if (_recorder != null) {
+                _recorder.flush();
+            }
+        }
+    }
+
+    /** Play one puzzle, as for playPuzzle. */
+    private void play() {
         _model = new Model(_width, _height);
+        _model.setHistoryLimit(_historyLimit);
         if (!_puzzles.deal(_model, _handSize)) {
             _active = false;
             return;
         }
         _model.pushState();
 
+        recordHand();
         logHand();
         while (_active) {
             if (_view != null) {
                 _view.update(_model);
             }
 
+            if (_commands.interactive()) {
+                _out.flush();
+            }
             String cmnd = _commands.getCommand();
             if (_logging || _testing) {
-                System.out.println(cmnd);
+                _out.append(cmnd);
+                _out.newLine();
             }
-            String[] parts = cmnd.split("\\s+");
-            switch (parts[0]) {
-            case "QUIT":
+            int kind = _parser.parse(cmnd);
+            if (kind == CommandParser.SIZE
+                && !properType(_parser.intArg(0), _parser.intArg(1),
+                               _parser.intArg(2))) {
+                kind = CommandParser.BAD;
+            }
+            if (_recorder != null) {
+                _recorder.recordCommand(kind, _parser, cmnd);
+            }
+            switch (kind) {
+            case CommandParser.QUIT:
                 _active = false;
                 return;
-            case "NEW":
+            case CommandParser.NEW:
                 return;
-            case "SIZE":
-                setType(toInt(parts[1]), toInt(parts[2]), toInt(parts[3]));
+            case CommandParser.SIZE:
+                setType(_parser.intArg(0), _parser.intArg(1),
+                        _parser.intArg(2));
                 return;
-            case "SET":
-                addPiece(toInt(parts[1]), toInt(parts[2]), toInt(parts[3]));
+            case CommandParser.SET:
+                addPiece(_parser.intArg(0), _parser.intArg(1),
+                         _parser.intArg(2));
                 break;
-            case "SEED":
-                _puzzles.setSeed(toLong(parts[1]));
+            case CommandParser.SEED:
+                _puzzles.setSeed(_parser.longArg(0));
                 break;
-            case "UNDO":
+            case CommandParser.UNDO:
                 undo();
                 break;
-            case "REDO":
+            case CommandParser.REDO:
                 redo();
                 break;
-            case "BOARD":
-                System.out.printf("==%n%s==%n", _model.toString());
+            case CommandParser.BOARD:
+                _out.append("==");
+                _out.newLine();
+                _out.append(_model.toString());
+                _out.append("==");
+                _out.newLine();
                 break;
-            case "":
+            case CommandParser.EMPTY:
                 break;
             default:
                 System.err.printf("Bad command: '%s'%n", cmnd);
@@ -98,12 +156,15 @@ public class Controller {
         if (!_model.placeable(p, row, col)) {
             System.err.printf("Invalid placement of piece %d at (%d, %d)%n",
                               p, row, col);
+            return;
         }
         _model.place(p, row, col);
         _model.clearFilledLines();
         if (_model.handUsed()) {
             if (!_puzzles.deal(_model, _handSize)) {
                 _active = false;
+            } else {
+                recordHand();
             }
             logHand();
         }
@@ -113,7 +174,7 @@ public class Controller {
     /** Set current puzzle parameters to dimensions WIDTH x HEIGHT,
      *  with HANDSIZE pieces in a hand. */
     private void setType(int width, int height, int handSize) {
-        if (width <= 0 || height <= 0 || handSize <= 0) {
+        if (!properType(width, height, handSize)) {
             throw badArgs("improper type parameters");
         }
         _width = width;
@@ -121,6 +182,13 @@ public class Controller {
         _handSize = handSize;
     }
 
+    /** Return true iff WIDTH x HEIGHT puzzles with HANDSIZE pieces in a
+     *  hand may be played. */
+    private static boolean properType(int width, int height, int handSize) {
+        return width > 0 && height > 0 && handSize > 0
+            && handSize <= Model.MAX_HAND_SIZE;
+    }
+
     /** Back up one move, if possible.  Does nothing otherwise. */
     private void undo() {
         _model.undo();
@@ -131,22 +199,46 @@ public class Controller {
         _model.redo();
     }
 
+    /** If recording, record the hand just dealt. */
+    private void recordHand() {
+        if (_recorder != null) {
+            _recorder.recordHand(_model);
+        }
+    }
+
     /** If logging, print a representation of the current hand. */
     private void logHand() {
         if (_logging) {
-            System.out.printf("H[%n%s]%n", _model.handToString());
+            _out.append("H[");
+            _out.newLine();
+            _out.append(_model.handToString());
+            _out.append(']');
+            _out.newLine();
         }
     }
 
     /** The board. */
     private Model _model;
 
+    /** Destination of output. */
+    private OutputSink _out =
+        new WriterSink(new OutputStreamWriter(System.out));
+
+    /** Records hands and commands, or null if not recording. */
+    private ReplayRecorder _recorder;
+
+    /** Parses the commands from _commands. */
+    private CommandParser _parser = new CommandParser();
+
     /** Our view of _model. */
     private View _view;
 
     /** Puzzle dimensions. */
     private int _width, _height, _handSize;
 
+    /** Maximum number of moves that may be undone, or 0 if unlimited. */
+    private int _historyLimit;
+
     /** Input source from standard input. */
     private CommandSource _commands;
 
@@ -0,0 +1,63 @@
+package blocks;
+
+import java.io.StringReader;
+import java.io.StringWriter;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+/** Tests of the Controller class.
+ *  @author Matilda Antwi
+ */
+public class ControllerTests {
+
+    @Rule
+    public Timeout methodTimeout = Timeout.seconds(5);
+
+    /** Check that a SIZE command asking for more than MAX_HAND_SIZE
+     *  pieces in a hand is rejected as a bad command, leaving the current
+     *  puzzle in play. */
+    @Test
+    public void oversizedHandTest() {
+        String before = HAND + "SET 0 0 0\n";
+        String after = "SET 1 2 2\nBOARD\nQUIT\n";
+        assertEquals("Oversized hand not ignored",
+                     play(before + after),
+                     play(before + "SIZE 8 8 "
+                          + (Model.MAX_HAND_SIZE + 1) + "\n" + after));
+    }
+
+    /** Check that SET commands that overlap occupied cells, fall off the
+     *  board, or name used or nonexistent pieces leave the board and hand
+     *  unchanged. */
+    @Test
+    public void invalidPlacementTest() {
+        String before = HAND + "SET 0 0 0\n";
+        String after = "SET 1 2 2\nBOARD\nQUIT\n";
+        assertEquals("Invalid placement changed the puzzle",
+                     play(before + after),
+                     play(before + "SET 1 0 1\nSET 2 7 7\nSET 0 4 4\n"
+                          + "SET 3 4 4\n" + after));
+    }
+
+    /** The text of a hand of three pieces. */
+    private static final String HAND =
+        "H[\n0:\n  ***\n1:\n  *\n2:\n  **\n]\n";
+
+    /** Return the output of a Controller playing INPUT, which contains
+     *  both commands and hands. */
+    private static String play(String input) {
+        TextSource text = new TextSource(new StringReader(input), null);
+        Controller controller = new Controller(null, text, text, false,
+                                               false);
+        StringWriter result = new StringWriter();
+        controller.setOutput(new WriterSink(result));
+        while (controller.active()) {
+            controller.playPuzzle();
+        }
+        return result.toString();
+    }
+
+}
@@ -0,0 +1,340 @@
+package blocks;
+
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.LongAdder;
+
+import static blocks.GreedyPolicy.ROUND_OVER_PENALTY;
+
+/** A MovePolicy that searches for the best way to play the whole current
+ *  hand, taking into account the hands that may be dealt afterwards.
+ *  The search alternates between choosing placements (taking the
+ *  maximum value over all legal placements of all pieces remaining in
+ *  the hand) and dealing a new hand (taking the average value over the
+ *  possible hands).  Positions at the search horizon are valued by
+ *  GreedyPolicy.evaluate.
+ *
+ *  Hands are dealt as by PuzzleGenerator: each piece is chosen uniformly
+ *  from PuzzleGenerator.PIECES.  Since there are far too many possible
+ *  hands to average over all of them, the solver instead averages over a
+ *  fixed random sample of hands, the same sample at every chance node.
+ *  Its values are therefore estimates whose accuracy improves with the
+ *  number of samples.
+ *
+ *  The search deepens iteratively, one hand at a time, up to a maximum
+ *  depth, stopping early when a time budget is exhausted.  Values of
+ *  positions already searched are kept in a transposition table, since
+ *  placing the same pieces in different orders often produces the same
+ *  board.  The table is keyed on Model.zobristKey.  The choices at the
+ *  top level and the samples at each chance node are searched in
+ *  parallel.
+ *  @author Matilda Antwi
+ */
+class ExpectimaxSolver implements MovePolicy {
+
+    /** Default search depth (in hands), number of sampled hands, and time
+     *  budget (in milliseconds) per move. */
+    static final int
+        DEFAULT_DEPTH = 2,
+        DEFAULT_SAMPLES = 6,
+        DEFAULT_TIME_LIMIT = 250;
+
+    /** Maximum number of positions remembered in the transposition
+     *  table. */
+    static final int TABLE_CAPACITY = 1 << 20;
+
+    /** A solver that searches up to DEPTH >= 1 hands ahead (the current
+     *  hand counting as one), averaging over SAMPLES >= 1 random hands
+     *  chosen with seed SEED, and taking at most about TIMELIMIT
+     *  milliseconds per move (no limit if 0).  It uses POOL for
+     *  parallel search. */
+    ExpectimaxSolver(int depth, int samples, long timeLimit, long seed,
+                     ForkJoinPool pool) {
+        if (depth < 1 || samples < 1 || timeLimit < 0) {
+            throw Utils.badArgs("improper search parameters");
+        }
+        _maxDepth = depth;
+        _numSamples = samples;
+        _timeLimit = timeLimit;
+        _random = new Random(seed);
+        _pool = pool;
+    }
+
+    /** A solver as for ExpectimaxSolver(DEPTH, SAMPLES, TIMELIMIT, SEED,
+     *  POOL), using the common fork-join pool. */
+    ExpectimaxSolver(int depth, int samples, long timeLimit, long seed) {
+        this(depth, samples, timeLimit, seed, ForkJoinPool.commonPool());
+    }
+
+    /** A solver with default parameters, whose random choices are
+     *  determined by SEED. */
+    ExpectimaxSolver(long seed) {
+        this(DEFAULT_DEPTH, DEFAULT_SAMPLES, DEFAULT_TIME_LIMIT, seed);
+    }
+
+    /** Returns the first placement of the best plan found for the current
+     *  hand.  Also sets value() and depthReached().  Not to be called
+     *  concurrently on the same solver. */
+    @Override
+    public int select(Model model) {
+        int[] moves = GreedyPolicy.legalMoves(model);
+        _value = GreedyPolicy.evaluate(model) - ROUND_OVER_PENALTY;
+        _depthReached = 0;
+        if (moves.length == 0) {
+            return -1;
+        }
+        setSamples(model.handSize());
+        _table.clear();
+        _hits.reset();
+        _deadline = _timeLimit == 0 ? Long.MAX_VALUE
+            : System.nanoTime() + _timeLimit * 1_000_000L;
+        int best = 0;
+        for (int depth = 1; depth <= _maxDepth; depth += 1) {
+            _timedOut = false;
+            Model[] forks = new Model[moves.length];
+            for (int i = 0; i < forks.length; i += 1) {
+                forks[i] = model.fork();
+            }
+            double[] values = new double[moves.length];
+            _pool.invoke(new RootSearch(forks, moves, values, depth,
+                                        0, moves.length));
+            if (_timedOut && depth > 1) {
+                break;
+            }
+            best = 0;
+            for (int i = 1; i < values.length; i += 1) {
+                if (values[i] > values[best]) {
+                    best = i;
+                }
+            }
+            _value = values[best];
+            _depthReached = depth;
+            if (_timedOut) {
+                break;
+            }
+        }
+        return moves[best];
+    }
+
+    /** Return the estimated value of the position given to the last call
+     *  of select, assuming best play, according to the deepest search
+     *  completed.  This is the expected score at the search horizon plus
+     *  the heuristic adjustments of GreedyPolicy.evaluate. */
+    double value() {
+        return _value;
+    }
+
+    /** Return the number of hands searched by the deepest search
+     *  completed during the last call of select (1 if even the first
+     *  search ran out of time). */
+    int depthReached() {
+        return _depthReached;
+    }
+
+    /** Return the number of positions whose values were found in the
+     *  transposition table during the last call of select. */
+    long tableHits() {
+        return _hits.sum();
+    }
+
+    /** Return the number of positions in the transposition table after
+     *  the last call of select. */
+    int tableSize() {
+        return _table.size();
+    }
+
+    /** Choose the sampled hands, each of HANDSIZE pieces, unless they are
+     *  already chosen. */
+    private void setSamples(int handSize) {
+        if (_samples != null && _samples[0].length == handSize) {
+            return;
+        }
+        Piece[] pieces = PuzzleGenerator.PIECES;
+        _samples = new Piece[_numSamples][handSize];
+        for (Piece[] hand : _samples) {
+            for (int k = 0; k < handSize; k += 1) {
+                hand[k] = pieces[_random.nextInt(pieces.length)];
+            }
+        }
+    }
+
+    /** Return the value of MODEL, in which DEPTH hands, including the
+     *  current one, remain to be searched. */
+    private double choose(Model model, int depth) {
+        if (model.handUsed()) {
+            return depth <= 1 ? GreedyPolicy.evaluate(model)
+                : deal(model, depth - 1);
+        }
+        if (System.nanoTime() > _deadline) {
+            _timedOut = true;
+            return GreedyPolicy.evaluate(model);
+        }
+        long key = key(model, depth);
+        Double known = _table.get(key);
+        if (known != null) {
+            _hits.increment();
+            return model.score() + known;
+        }
+        int[] moves = GreedyPolicy.legalMoves(model);
+        double best;
+        if (moves.length == 0) {
+            best = GreedyPolicy.evaluate(model) - ROUND_OVER_PENALTY;
+        } else {
+            best = Double.NEGATIVE_INFINITY;
+            for (int move : moves) {
+                Model next = model.fork();
+                GreedyPolicy.makeMove(next, move);
+                best = Math.max(best, choose(next, depth));
+            }
+        }
+        remember(key, best - model.score());
+        return best;
+    }
+
+    /** Return the average value of MODEL (whose hand is used up) over
+     *  the sampled hands, with DEPTH hands, including the one dealt,
+     *  remaining to be searched. */
+    private double deal(Model model, int depth) {
+        long key = key(model, depth);
+        Double known = _table.get(key);
+        if (known != null) {
+            _hits.increment();
+            return model.score() + known;
+        }
+        Sample[] tasks = new Sample[_samples.length];
+        for (int s = 0; s < tasks.length; s += 1) {
+            Model next = model.fork();
+            next.clearHand();
+            for (Piece piece : _samples[s]) {
+                next.deal(piece);
+            }
+            tasks[s] = new Sample(next, depth);
+        }
+        RecursiveTask.invokeAll(tasks);
+        double total;
+        total = 0.0;
+        for (Sample task : tasks) {
+            total += task.join();
+        }
+        double result = total / tasks.length;
+        remember(key, result - model.score());
+        return result;
+    }
+
+    /** Record GAIN as the value of the position denoted by KEY relative to
+     *  its score, unless the current search has run out of time (in
+     *  which case GAIN may be inaccurate) or the table is full. */
+    private void remember(long key, double gain) {
+        if (!_timedOut && _table.size() < TABLE_CAPACITY) {
+            _table.put(key, gain);
+        }
+    }
+
+    /** Return the transposition-table key for MODEL with DEPTH hands
+     *  remaining to search.  Besides the position (board and hand), this
+     *  includes the streak length, which affects future scores.  The
+     *  score is not included; values are recorded relative to it.  As
+     *  for all Zobrist keys, distinct positions could collide, but it is
+     *  very improbable. */
+    static long key(Model model, int depth) {
+        return model.zobristKey()
+            ^ Utils.mix(((long) depth << Integer.SIZE)
+                        | model.streakLength());
+    }
+
+    /** Searches one sampled hand at a chance node. */
+    private class Sample extends RecursiveTask<Double> {
+
+        /** A task that computes the value of MODEL, which holds a newly
+         *  dealt hand, with DEPTH hands remaining to search. */
+        Sample(Model model, int depth) {
+            _model = model;
+            _depth = depth;
+        }
+
+        @Override
+        protected Double compute() {
+            return choose(_model, _depth);
+        }
+
+        /** Position searched. */
+        private Model _model;
+        /** Number of hands remaining to search. */
+        private int _depth;
+    }
+
+    /** Computes the values of a range of candidate first moves. */
+    private class RootSearch extends RecursiveAction {
+
+        /** A search that sets VALUES[i] to the value of making MOVES[i]
+         *  in FORKS[i] (a private fork of the current model) and
+         *  searching DEPTH hands, for START <= i < END. */
+        RootSearch(Model[] forks, int[] moves, double[] values, int depth,
+                   int start, int end) {
+            _forks = forks;
+            _moves = moves;
+            _values = values;
+            _depth = depth;
+            _start = start;
+            _end = end;
+        }
+
+        @Override
+        protected void compute() {
+            if (_end - _start <= 1) {
+                for (int i = _start; i < _end; i += 1) {
+                    GreedyPolicy.makeMove(_forks[i], _moves[i]);
+                    _values[i] = choose(_forks[i], _depth);
+                }
+            } else {
+                int mid = (_start + _end) / 2;
+                invokeAll(new RootSearch(_forks, _moves, _values, _depth,
+                                         _start, mid),
+                          new RootSearch(_forks, _moves, _values, _depth,
+                                         mid, _end));
+            }
+        }
+
+        /** Private forks of the current model. */
+        private Model[] _forks;
+        /** Candidate moves. */
+        private int[] _moves;
+        /** Values of candidate moves. */
+        private double[] _values;
+        /** Number of hands to search. */
+        private int _depth;
+        /** Range of candidates searched. */
+        private int _start, _end;
+    }
+
+    /** Maximum number of hands to search. */
+    private int _maxDepth;
+    /** Number of hands sampled at each chance node. */
+    private int _numSamples;
+    /** Time budget per move in milliseconds, or 0 for none. */
+    private long _timeLimit;
+    /** Source of sampled hands. */
+    private Random _random;
+    /** Pool used for parallel search. */
+    private ForkJoinPool _pool;
+    /** Sampled hands. */
+    private Piece[][] _samples;
+    /** Values of positions searched, relative to their scores. */
+    private ConcurrentHashMap<Long, Double> _table =
+        new ConcurrentHashMap<>();
+    /** Number of values found in _table during the current search. */
+    private LongAdder _hits = new LongAdder();
+    /** Value of time (as for System.nanoTime) after which the current
+     *  search is abandoned. */
+    private volatile long _deadline;
+    /** True iff the current search has run out of time. */
+    private volatile boolean _timedOut;
+    /** Results of the last call to select. */
+    private double _value;
+    /** Depth of the deepest search completed by the last call to
+     *  select. */
+    private int _depthReached;
+}
@@ -0,0 +1,22 @@
+package blocks;
+
+/** A MovePolicy that always makes the first legal move, taking pieces in
+ *  hand order and placements in row-major order.  Useful mostly as a fast
+ *  baseline.
+ *  @author Matilda Antwi
+ */
+class FirstPolicy implements MovePolicy {
+
+    @Override
+    public int select(Model model) {
+        for (int k = 0; k < model.handSize(); k += 1) {
+            if (model.placeable(k) && model.legalMoves(k, _move) > 0) {
+                return _move[0];
+            }
+        }
+        return -1;
+    }
+
+    /** Receives the first legal move of a piece. */
+    private int[] _move = new int[1];
+}
@@ -15,6 +15,7 @@ import java.io.StringWriter;
 import javax.swing.JEditorPane;
 import javax.swing.JFrame;
 import javax.swing.JScrollPane;
+import javax.swing.Timer;
 
 import static blocks.Utils.*;
 
@@ -29,6 +30,10 @@ class GUI extends TopLevel implements View {
     /** Time in milliseconds between score-label updates. */
     static final long LABEL_UPDATE_PAUSE = 20;
 
+    /** Maximum number of score-label updates used to animate one
+     *  increase in score.  Larger increases are shown in bigger steps. */
+    static final int MAX_LABEL_UPDATES = 25;
+
     /** Size of pane used to contain help text. */
     static final Dimension TEXT_BOX_SIZE = new Dimension(500, 700);
 
@@ -61,6 +66,8 @@ class GUI extends TopLevel implements View {
                                                          HELP_TEXT));
         _moveSound = new SoundEffect(MOVE_SOUND);
         _doneSound = new SoundEffect(DONE_SOUND);
+        _scoreTimer = new Timer((int) LABEL_UPDATE_PAUSE,
+                                (e) -> animateScore());
     }
 
     /** Response to "Quit" button click. */
@@ -213,16 +220,37 @@ class GUI extends TopLevel implements View {
         } else {
             _widget.update(model);
         }
-        for (int s = _lastScore; s < model.score(); s += 1) {
-            setLabel("ScoreLabel", msg("%4d", s));
-            try {
-                Thread.sleep(LABEL_UPDATE_PAUSE);
-            } catch (InterruptedException excp) {
-                assert false;
-            }
+        _targetScore = model.score();
+        if (!_scoreTimer.isRunning()) {
+            _scoreTimer.start();
+        }
+    }
+
+    /** Move the score label one step toward _targetScore, counting up
+     *  through the intervening scores in at most MAX_LABEL_UPDATES
+     *  equal steps and jumping directly to lower scores.  Stop the
+     *  animation when the label shows _targetScore.  Called by
+     *  _scoreTimer on the event-dispatching thread. */
+    private void animateScore() {
+        int target = _targetScore;
+        if (target != _animatedScore) {
+            _animatedScore = target;
+            _scoreStep = Math.max(1, (target - _lastScore
+                                      + MAX_LABEL_UPDATES - 1)
+                                  / MAX_LABEL_UPDATES);
+        }
+        if (_lastScore < target) {
+            _lastScore = Math.min(target, _lastScore + _scoreStep);
+        } else {
+            _lastScore = target;
         }
-        _lastScore = model.score();
         setLabel("ScoreLabel", msg("%4d", _lastScore));
+        if (_lastScore == target) {
+            _scoreTimer.stop();
+            if (_targetScore != target) {
+                _scoreTimer.start();
+            }
+        }
     }
 
     /** Set up and lay out the components of the GUI. */
@@ -264,8 +292,18 @@ class GUI extends TopLevel implements View {
     private int _width, _height;
     /** The number of Pieces dealt to a hand. */
     private int _handSize;
-    /** The last reported score. */
+    /** The score shown on the score label.  Accessed only on the
+     *  event-dispatching thread. */
     private int _lastScore;
+    /** The score most recently reported by update, toward which the
+     *  score label is animated. */
+    private volatile int _targetScore;
+    /** The value of _targetScore for which _scoreStep was computed. */
+    private int _animatedScore;
+    /** Increment of the score label at each step of the animation. */
+    private int _scoreStep;
+    /** Animates the score label. */
+    private Timer _scoreTimer;
     /** Maximum score achieved.  Updated at end of each round. */
     private int _maxScore;
 
@@ -0,0 +1,217 @@
+package blocks;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/** A MovePolicy that chooses the move leading to the position with the
+ *  highest heuristic value (see evaluate).  With a depth greater than 1,
+ *  it looks ahead by placing up to that many of the pieces remaining in
+ *  the hand, in every order and at every legal position, and values each
+ *  first move by the best position reachable from it.  Candidate first
+ *  moves are evaluated in parallel on forks of the model.
+ *  @author Matilda Antwi
+ */
+class GreedyPolicy implements MovePolicy {
+
+    /** Heuristic weights: value of each empty row or column, cost of
+     *  each empty cell enclosed on all four sides, cost of each boundary
+     *  between filled and empty cells, and cost of ending the round. */
+    static final double
+        EMPTY_LINE_WEIGHT = 2.0,
+        HOLE_WEIGHT = 6.0,
+        BOUNDARY_WEIGHT = 0.5,
+        ROUND_OVER_PENALTY = 1000.0;
+
+    /** Minimum number of candidate moves evaluated by one task. */
+    static final int TASK_GRAIN = 2;
+
+    /** A policy that looks ahead DEPTH >= 1 pieces, evaluating
+     *  candidates on POOL. */
+    GreedyPolicy(int depth, ForkJoinPool pool) {
+        assert depth >= 1;
+        _depth = depth;
+        _pool = pool;
+    }
+
+    /** A policy that looks ahead DEPTH >= 1 pieces, evaluating candidates
+     *  on the common fork-join pool. */
+    GreedyPolicy(int depth) {
+        this(depth, ForkJoinPool.commonPool());
+    }
+
+    @Override
+    public int select(Model model) {
+        int[] moves = legalMoves(model);
+        int n = moves.length;
+        if (n == 0) {
+            return -1;
+        }
+        Model[] forks = new Model[n];
+        for (int i = 0; i < n; i += 1) {
+            forks[i] = model.fork();
+        }
+        double[] values = new double[n];
+        _pool.invoke(new Evaluation(forks, moves, values, 0, n));
+        int best = 0;
+        for (int i = 1; i < n; i += 1) {
+            if (values[i] > values[best]) {
+                best = i;
+            }
+        }
+        return moves[best];
+    }
+
+    /** Return the value of the best position reachable from MODEL by
+     *  placing at most DEPTH more pieces from its hand. */
+    private double search(Model model, int depth) {
+        if (depth == 0 || model.handUsed()) {
+            return evaluate(model);
+        }
+        int[] moves = legalMoves(model);
+        if (moves.length == 0) {
+            return evaluate(model) - ROUND_OVER_PENALTY;
+        }
+        double best = Double.NEGATIVE_INFINITY;
+        for (int move : moves) {
+            Model next = model.fork();
+            makeMove(next, move);
+            best = Math.max(best, search(next, depth - 1));
+        }
+        return best;
+    }
+
+    /** Return the legal moves in MODEL, omitting those for pieces that are
+     *  equal to pieces earlier in the hand. */
+    static int[] legalMoves(Model model) {
+        int[] moves = new int[model.width() * model.height()];
+        int[] pieceMoves = new int[moves.length];
+        int n;
+        n = 0;
+        for (int k = 0; k < model.handSize(); k += 1) {
+            if (!model.placeable(k) || duplicate(model, k)) {
+                continue;
+            }
+            int m = model.legalMoves(k, pieceMoves);
+            if (n + m > moves.length) {
+                moves = Arrays.copyOf(moves, Math.max(n + m,
+                                                      2 * moves.length));
+            }
+            System.arraycopy(pieceMoves, 0, moves, n, m);
+            n += m;
+        }
+        return Arrays.copyOf(moves, n);
+    }
+
+    /** Return true iff piece #K of MODEL's hand is equal to an earlier
+     *  piece. */
+    private static boolean duplicate(Model model, int k) {
+        for (int j = 0; j < k; j += 1) {
+            if (model.piece(k).equals(model.piece(j))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Make MOVE (encoded as for Model.move) in MODEL, clearing any lines
+     *  it fills. */
+    static void makeMove(Model model, int move) {
+        model.place(Model.movePiece(move), Model.moveRow(move),
+                    Model.moveCol(move));
+        model.clearFilledLines();
+    }
+
+    /** Return the heuristic value of MODEL: its score, plus a bonus for
+     *  empty rows and columns, minus penalties for empty cells that are
+     *  enclosed on all sides and for boundaries between filled and empty
+     *  cells.  Cells off the board count as filled. */
+    static double evaluate(Model model) {
+        int width = model.width(), height = model.height(),
+            words = model.rowWords();
+        int emptyLines, holes, boundaries;
+        emptyLines = holes = boundaries = 0;
+        for (int r = 0; r < height; r += 1) {
+            if (model.rowCount(r) == 0) {
+                emptyLines += 1;
+            }
+        }
+        for (int c = 0; c < width; c += 1) {
+            if (model.columnCount(c) == 0) {
+                emptyLines += 1;
+            }
+        }
+        for (int r = 0; r < height; r += 1) {
+            for (int w = 0; w < words; w += 1) {
+                long row = paddedWord(model, r, w),
+                    above = r == 0 ? -1L : paddedWord(model, r - 1, w),
+                    below = r == height - 1 ? -1L
+                        : paddedWord(model, r + 1, w),
+                    before = w == 0 ? -1L : paddedWord(model, r, w - 1),
+                    after = w == words - 1 ? -1L
+                        : paddedWord(model, r, w + 1);
+                long left = (row << 1) | (before >>> (Long.SIZE - 1)),
+                    right = (row >>> 1) | (after << (Long.SIZE - 1));
+                holes += Long.bitCount(~row & left & right & above & below);
+                boundaries += Long.bitCount(row ^ right)
+                    + Long.bitCount(row ^ below);
+            }
+        }
+        return model.score() + EMPTY_LINE_WEIGHT * emptyLines
+            - HOLE_WEIGHT * holes - BOUNDARY_WEIGHT * boundaries;
+    }
+
+    /** Return word W of row R of MODEL, as for Model.rowWord, but with
+     *  bits for positions off the board set. */
+    private static long paddedWord(Model model, int r, int w) {
+        int valid = model.width() - w * Long.SIZE;
+        long word = model.rowWord(r, w);
+        return valid >= Long.SIZE ? word : word | (-1L << valid);
+    }
+
+    /** Computes the values of a range of candidate moves. */
+    private class Evaluation extends RecursiveAction {
+
+        /** An evaluation that sets VALUES[i] to the value of making
+         *  MOVES[i] in FORKS[i] (a private fork of the current model),
+         *  for START <= i < END. */
+        Evaluation(Model[] forks, int[] moves, double[] values,
+                   int start, int end) {
+            _forks = forks;
+            _moves = moves;
+            _values = values;
+            _start = start;
+            _end = end;
+        }
+
+        @Override
+        protected void compute() {
+            if (_end - _start <= TASK_GRAIN) {
+                for (int i = _start; i < _end; i += 1) {
+                    makeMove(_forks[i], _moves[i]);
+                    _values[i] = search(_forks[i], _depth - 1);
+                }
+            } else {
+                int mid = (_start + _end) / 2;
+                invokeAll(new Evaluation(_forks, _moves, _values,
+                                         _start, mid),
+                          new Evaluation(_forks, _moves, _values,
+                                         mid, _end));
+            }
+        }
+
+        /** Private forks of the current model. */
+        private Model[] _forks;
+        /** Candidate moves. */
+        private int[] _moves;
+        /** Values of candidate moves. */
+        private double[] _values;
+        /** Range of candidates evaluated. */
+        private int _start, _end;
+    }
+
+    /** Number of pieces to look ahead. */
+    private int _depth;
+    /** Pool on which candidates are evaluated. */
+    private ForkJoinPool _pool;
+}
@@ -1,8 +1,10 @@
 package blocks;
 
-import java.util.Scanner;
 import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.InputStreamReader;
 import java.io.IOException;
+import java.nio.file.Paths;
 
 import ucb.util.CommandArgs;
 
@@ -12,21 +14,46 @@ import ucb.util.CommandArgs;
 public class Main {
 
     /** The main program.  ARGS may contain the options --seed=NUM,
-     *  (random seed); --log (record commands, clicks);
+     *  (random seed); --undo-limit=NUM (maximum number of moves that
+     *  may be undone, 0 for no limit); --log (record commands, clicks);
      *  --testing (take puzzles and commands from standard input);
      *  --setup (take puzzles from standard input and commands from GUI);
-     *  and --no-display. */
+     *  --no-display; and --simulate=NUM (play NUM games with no display or
+     *  text input and report statistics), which may be accompanied by
+     *  --threads=NUM, --policy=NAME, --width=NUM, --height=NUM, and
+     *  --hand=NUM; and --auto=NAME (play automatically using the move
+     *  policy NAME for --rounds=NUM rounds, or indefinitely); and
+     *  --record=FILE (write a binary replay of the games to FILE) or
+     *  --replay=FILE (take puzzles and commands from such a replay); and
+     *  --rescore=FILE (replay and score all games in an archive of such
+     *  replays and report statistics), which may be accompanied by
+     *  --threads=NUM. */
     public static void main(String... args) {
 
         CommandArgs options =
-            new CommandArgs("--seed=(\\d+) --log --testing "
-                            + "--no-display --debug --=(.*)",
+            new CommandArgs("--seed=(\\d+) --undo-limit=(\\d+) --log "
+                            + "--testing --no-display --debug "
+                            + "--simulate=(\\d+) --threads=(\\d+) "
+                            + "--policy=(\\w+) --width=(\\d+) "
+                            + "--height=(\\d+) --hand=(\\d+) "
+                            + "--auto=(\\w+) --rounds=(\\d+) "
+                            + "--record=(.+) --replay=(.+) "
+                            + "--rescore=(.+) --=(.*)",
                             args);
         if (!options.ok()) {
             System.err.println("Usage: java blocks.Main [ --seed=NUM ] "
+                               + "[ --undo-limit=NUM ] "
                                + "[ --log ] [ --testing ] [ --no-display ]"
                                + " [ --debug ]"
+                               + " [ --auto=NAME [ --rounds=NUM ] ]"
+                               + " [ --record=FILE | --replay=FILE ]"
                                + " [ INPUT ]");
+            System.err.println("       java blocks.Main --simulate=NUM "
+                               + "[ --threads=NUM ] [ --policy=NAME ] "
+                               + "[ --width=NUM ] [ --height=NUM ] "
+                               + "[ --hand=NUM ] [ --seed=NUM ]");
+            System.err.println("       java blocks.Main --rescore=FILE "
+                               + "[ --threads=NUM ]");
             System.exit(1);
         }
 
@@ -42,7 +69,27 @@ public class Main {
 
         Utils.setDebuggingMessages(options.contains("--debug"));
 
-        Controller puzzler = getController(options);
+        if (options.contains("--simulate") || options.contains("--rescore")) {
+            try {
+                if (options.contains("--rescore")) {
+                    rescore(options);
+                } else {
+                    simulate(options);
+                }
+            } catch (IllegalArgumentException | IllegalStateException excp) {
+                System.err.printf("Error: %s%n", excp.getMessage());
+                System.exit(1);
+            }
+            System.exit(0);
+        }
+
+        Controller puzzler = null;
+        try {
+            puzzler = getController(options);
+        } catch (IllegalArgumentException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+            System.exit(1);
+        }
 
         try {
             while (puzzler.active()) {
@@ -57,9 +104,52 @@ public class Main {
 
     }
 
+    /** Play the number of games requested by the --simulate option in
+     *  OPTIONS, as further indicated by OPTIONS, and print statistics
+     *  on standard output. */
+    private static void simulate(CommandArgs options) {
+        int threads = Runtime.getRuntime().availableProcessors();
+        if (options.contains("--threads")) {
+            threads = options.getInt("--threads");
+        }
+        Simulator sim =
+            new Simulator(intOption(options, "--width",
+                                    Controller.DEFAULT_SIZE),
+                          intOption(options, "--height",
+                                    Controller.DEFAULT_SIZE),
+                          intOption(options, "--hand",
+                                    Controller.DEFAULT_HAND_SIZE),
+                          options.contains("--policy")
+                          ? options.getFirst("--policy") : "random",
+                          options.contains("--seed")
+                          ? options.getLong("--seed") : 0);
+        sim.run(options.getInt("--simulate"), threads);
+        System.out.print(sim.report());
+    }
+
+    /** Rescore the archive of replays named by the --rescore option in
+     *  OPTIONS, using the number of threads given by --threads, and
+     *  print statistics on standard output. */
+    private static void rescore(CommandArgs options) {
+        ReplayArchive archive =
+            new ReplayArchive(Paths.get(options.getFirst("--rescore")));
+        archive.rescore(intOption(options, "--threads",
+                                  Runtime.getRuntime()
+                                  .availableProcessors()));
+        System.out.print(archive.report());
+    }
+
+    /** Return the value of integer option NAME in OPTIONS, or DEFLT if
+     *  it is absent. */
+    private static int intOption(CommandArgs options, String name,
+                                 int deflt) {
+        return options.contains(name) ? options.getInt(name) : deflt;
+    }
+
     /** Return an appropriate Controller as indicated by OPTIONS. */
     private static Controller getController(CommandArgs options) {
         GUI gui;
+        View view;
         CommandSource cmds;
         PuzzleSource puzzles;
 
@@ -69,29 +159,72 @@ public class Main {
             gui = new GUI("Blocks 61B");
         }
 
+        long seed;
+        if (options.contains("--seed")) {
+            seed = options.getLong("--seed");
+        } else {
+            seed = (long) (Math.random() * SEED_RANGE);
+        }
+
+        view = gui;
         puzzles = null;
         if (options.contains("--testing")) {
-            TextSource src = new TextSource(new Scanner(System.in), null);
+            TextSource src = new TextSource(new InputStreamReader(System.in),
+                                            null);
             cmds = src;
             puzzles = src;
         } else if (gui == null) {
-            cmds = new TextSource(new Scanner(System.in), "> ");
+            cmds = new TextSource(new InputStreamReader(System.in), "> ");
         } else {
             cmds = new GUISource(gui);
         }
+        if (options.contains("--auto")) {
+            PolicySource auto =
+                new PolicySource(MovePolicy.create(options.getFirst("--auto"),
+                                                   seed),
+                                 gui, intOption(options, "--rounds", 0));
+            cmds = auto;
+            view = auto;
+        }
+        if (options.contains("--replay")) {
+            ReplayPlayer player =
+                new ReplayPlayer(openInput(options.getFirst("--replay")));
+            cmds = player;
+            puzzles = player;
+        }
         if (puzzles == null) {
-            long seed;
-            if (options.contains("--seed")) {
-                seed = options.getLong("--seed");
-            } else {
-                seed = (long) (Math.random() * SEED_RANGE);
-            }
             puzzles = new PuzzleGenerator(seed);
         }
 
-        return new Controller(gui, cmds, puzzles,
-                              options.contains("--log"),
-                              options.contains("--testing"));
+        Controller result =
+            new Controller(view, cmds, puzzles,
+                           options.contains("--log"),
+                           options.contains("--testing"));
+        if (options.contains("--undo-limit")) {
+            result.setHistoryLimit(options.getInt("--undo-limit"));
+        }
+        if (options.contains("--record")) {
+            String name = options.getFirst("--record");
+            try {
+                result.setRecorder(
+                    new ReplayRecorder(new FileOutputStream(name), seed,
+                                       Controller.DEFAULT_SIZE,
+                                       Controller.DEFAULT_SIZE,
+                                       Controller.DEFAULT_HAND_SIZE));
+            } catch (IOException excp) {
+                throw Utils.badArgs("could not create %s", name);
+            }
+        }
+        return result;
+    }
+
+    /** Return a stream reading from the file named NAME. */
+    private static FileInputStream openInput(String name) {
+        try {
+            return new FileInputStream(name);
+        } catch (IOException excp) {
+            throw Utils.badArgs("could not open %s", name);
+        }
     }
 
     /** Maximum default seed. */
@@ -0,0 +1,276 @@
+package blocks;
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import static blocks.GreedyPolicy.ROUND_OVER_PENALTY;
+
+/** A MovePolicy that chooses moves by Monte Carlo tree search.  Each
+ *  search tree covers the placements of the pieces in the current hand.
+ *  Every iteration descends the tree using the UCB1 rule, adds one
+ *  node, and plays on from there at random on a fork of the model,
+ *  dealing further hands from a PuzzleGenerator, for a few hands or
+ *  until the round ends.  The resulting position is valued by
+ *  GreedyPolicy.evaluate, and the value is credited to every node on
+ *  the path.
+ *
+ *  The search is root-parallel: several workers each build an
+ *  independent tree, with its own random choices, until a common
+ *  deadline.  The visit counts of the first moves are then summed over
+ *  the trees, and the most-visited move is chosen.
+ *  @author Matilda Antwi
+ */
+class MctsPolicy implements MovePolicy {
+
+    /** Default time budget per move, in milliseconds. */
+    static final int DEFAULT_TIME_LIMIT = 50;
+
+    /** Number of hands dealt during each random playout. */
+    static final int PLAYOUT_HANDS = 1;
+
+    /** Weight of the exploration term of the UCB1 formula, applied to
+     *  values scaled to the range [0, 1]. */
+    static final double EXPLORATION = 0.7;
+
+    /** A policy that takes about TIMELIMIT milliseconds per move (no
+     *  limit if 0), and at most ITERATIONS iterations per worker (no limit
+     *  if 0), using WORKERS search trees evaluated on POOL.  Its random
+     *  choices are determined by SEED.  Either TIMELIMIT or ITERATIONS
+     *  must be positive. */
+    MctsPolicy(long timeLimit, int iterations, int workers, long seed,
+               ForkJoinPool pool) {
+        if (timeLimit < 0 || iterations < 0 || workers <= 0
+            || timeLimit == 0 && iterations == 0) {
+            throw Utils.badArgs("improper search parameters");
+        }
+        _timeLimit = timeLimit;
+        _iterations = iterations;
+        _workers = workers;
+        _random = new Random(seed);
+        _pool = pool;
+    }
+
+    /** A policy that takes about DEFAULT_TIME_LIMIT milliseconds per
+     *  move, using one search tree per processor on the common fork-join
+     *  pool, with random choices determined by SEED. */
+    MctsPolicy(long seed) {
+        this(DEFAULT_TIME_LIMIT, 0,
+             Runtime.getRuntime().availableProcessors(), seed,
+             ForkJoinPool.commonPool());
+    }
+
+    /** Not to be called concurrently on the same policy. */
+    @Override
+    public int select(Model model) {
+        int[] moves = GreedyPolicy.legalMoves(model);
+        _playouts = 0;
+        if (moves.length <= 1) {
+            return moves.length == 0 ? -1 : moves[0];
+        }
+        long deadline = _timeLimit == 0 ? Long.MAX_VALUE
+            : System.nanoTime() + _timeLimit * 1_000_000L;
+        Worker[] workers = new Worker[_workers];
+        for (int w = 0; w < workers.length; w += 1) {
+            workers[w] = new Worker(model.fork(), moves, deadline,
+                                    _random.nextLong());
+            _pool.execute(workers[w]);
+        }
+        long[] visits = new long[moves.length];
+        double[] totals = new double[moves.length];
+        for (Worker worker : workers) {
+            worker.join();
+            worker.addResults(visits, totals);
+        }
+        int best = 0;
+        for (int i = 0; i < moves.length; i += 1) {
+            _playouts += visits[i];
+            if (visits[i] > visits[best]
+                || visits[i] == visits[best]
+                   && totals[i] * visits[best] > totals[best] * visits[i]) {
+                best = i;
+            }
+        }
+        return moves[best];
+    }
+
+    /** Return the total number of playouts performed by all workers during
+     *  the last call to select. */
+    long playouts() {
+        return _playouts;
+    }
+
+    /** A node of a search tree, representing the position after a
+     *  sequence of placements from the current hand. */
+    private static class Node {
+
+        /** A node whose possible next moves are MOVES.  MOVES is empty if
+         *  the hand is used up or no piece can be placed. */
+        Node(int[] moves) {
+            _moves = moves;
+            _children = new Node[moves.length];
+        }
+
+        /** Possible next moves, encoded as for Model.move. */
+        private int[] _moves;
+        /** _children[i] is the node reached by _moves[i], or null if it
+         *  has not yet been added (which is true iff i >= _expanded). */
+        private Node[] _children;
+        /** Number of children added so far. */
+        private int _expanded;
+        /** Number of playouts through this node. */
+        private int _visits;
+        /** Total value of those playouts. */
+        private double _total;
+    }
+
+    /** Builds one search tree. */
+    private class Worker extends RecursiveAction {
+
+        /** A worker that searches from MODEL (a private fork of the current
+         *  model), whose legal moves are MOVES, until time DEADLINE (as for
+         *  System.nanoTime) or the iteration limit, with random choices
+         *  determined by SEED. */
+        Worker(Model model, int[] moves, long deadline, long seed) {
+            _model = model;
+            _tree = new Node(moves);
+            _deadline = deadline;
+            _random = new Random(seed);
+            _puzzles = new PuzzleGenerator(0);
+            _puzzles.setSeed(_random.nextLong());
+            _path = new Node[model.handSize() + 1];
+            _buffer = new int[model.width() * model.height()
+                              * model.handSize()];
+        }
+
+        @Override
+        protected void compute() {
+            int n = 0;
+            do {
+                iterate();
+                n += 1;
+            } while (n != _iterations && System.nanoTime() < _deadline);
+        }
+
+        /** Add the visit counts and total values of the first moves in my
+         *  tree to VISITS and TOTALS. */
+        void addResults(long[] visits, double[] totals) {
+            for (int i = 0; i < _tree._expanded; i += 1) {
+                visits[i] += _tree._children[i]._visits;
+                totals[i] += _tree._children[i]._total;
+            }
+        }
+
+        /** Perform one iteration of the search: descend the tree, add a
+         *  node, play out from it, and record the result. */
+        private void iterate() {
+            Model model = _model.fork();
+            Node node = _tree;
+            int depth = 0;
+            _path[0] = node;
+            while (node._moves.length > 0) {
+                int i;
+                if (node._expanded < node._moves.length) {
+                    i = node._expanded;
+                    node._expanded += 1;
+                    GreedyPolicy.makeMove(model, node._moves[i]);
+                    node._children[i] =
+                        new Node(model.handUsed() ? NO_MOVES
+                                 : GreedyPolicy.legalMoves(model));
+                } else {
+                    i = bestChild(node);
+                    GreedyPolicy.makeMove(model, node._moves[i]);
+                }
+                node = node._children[i];
+                depth += 1;
+                _path[depth] = node;
+                if (node._visits == 0) {
+                    break;
+                }
+            }
+            double value = playOut(model);
+            _least = Math.min(_least, value);
+            _most = Math.max(_most, value);
+            for (int d = 0; d <= depth; d += 1) {
+                _path[d]._visits += 1;
+                _path[d]._total += value;
+            }
+        }
+
+        /** Return the index of the child of NODE (all of whose children
+         *  have been added) with the greatest UCB1 value. */
+        private int bestChild(Node node) {
+            double range = Math.max(_most - _least, 1.0);
+            double logVisits = Math.log(node._visits);
+            int best = 0;
+            double bestValue = Double.NEGATIVE_INFINITY;
+            for (int i = 0; i < node._children.length; i += 1) {
+                Node child = node._children[i];
+                double value =
+                    (child._total / child._visits - _least) / range
+                    + EXPLORATION * Math.sqrt(logVisits / child._visits);
+                if (value > bestValue) {
+                    best = i;
+                    bestValue = value;
+                }
+            }
+            return best;
+        }
+
+        /** Play at random on MODEL, dealing new hands as needed, until
+         *  PLAYOUT_HANDS further hands have been used up or the round
+         *  ends.  Returns the value of the final position. */
+        private double playOut(Model model) {
+            int handSize = _path.length - 1;
+            int hands = 0;
+            while (true) {
+                if (model.handUsed()) {
+                    if (hands == PLAYOUT_HANDS) {
+                        return GreedyPolicy.evaluate(model);
+                    }
+                    _puzzles.deal(model, handSize);
+                    hands += 1;
+                }
+                int n = model.legalMoves(_buffer);
+                if (n == 0) {
+                    return GreedyPolicy.evaluate(model) - ROUND_OVER_PENALTY;
+                }
+                GreedyPolicy.makeMove(model, _buffer[_random.nextInt(n)]);
+            }
+        }
+
+        /** Position at the root of my tree. */
+        private Model _model;
+        /** Root of my tree. */
+        private Node _tree;
+        /** Time at which to stop searching. */
+        private long _deadline;
+        /** Source of random moves. */
+        private Random _random;
+        /** Source of hands dealt during playouts. */
+        private PuzzleGenerator _puzzles;
+        /** The nodes visited by the current iteration. */
+        private Node[] _path;
+        /** Holds legal moves during playouts. */
+        private int[] _buffer;
+        /** Least and greatest playout values seen. */
+        private double _least = Double.POSITIVE_INFINITY,
+            _most = Double.NEGATIVE_INFINITY;
+    }
+
+    /** An empty list of moves. */
+    private static final int[] NO_MOVES = {};
+
+    /** Time budget per move in milliseconds, or 0 for none. */
+    private long _timeLimit;
+    /** Maximum number of iterations per worker, or 0 for none. */
+    private int _iterations;
+    /** Number of search trees. */
+    private int _workers;
+    /** Source of seeds for the workers. */
+    private Random _random;
+    /** Pool on which the workers run. */
+    private ForkJoinPool _pool;
+    /** Number of playouts during the last call to select. */
+    private long _playouts;
+}
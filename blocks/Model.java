@@ -1,7 +1,6 @@
 package blocks;
 
-import java.util.ArrayList;
-import java.util.Formatter;
+import java.util.Arrays;
 
 import static blocks.Utils.*;
 
@@ -19,6 +18,9 @@ import static blocks.Utils.*;
  */
 class Model {
 
+    /** Maximum number of pieces in a hand. */
+    static final int MAX_HAND_SIZE = Long.SIZE;
+
     /** A Model of WIDTH x HEIGHT cells that are initially OPEN, and with
      *  a hand containing no pieces (null or otherwise).
      *  Requires that 0 < WIDTH and 0 < HEIGHT. */
@@ -28,28 +30,112 @@ class Model {
         }
         _height = height;
         _width = width;
-        _cells = new boolean[_height][_width];
+        _words = (width + WORD_SIZE - 1) / WORD_SIZE;
+        _cells = new long[_height * _words];
+        _fullColumns = new long[_words];
+        _rowCounts = new int[_height];
+        _colCounts = new int[_width];
+        _fullRows = new int[_height];
+        _fullCols = new int[_width];
         _score = 0;
-        _history = new ArrayList<>();
         _streakLength = 0;
-        _hand = new ArrayList<>();
+        _handIds = new byte[INITIAL_HAND_CAPACITY];
+        _canPlace = new byte[MAX_HAND_SIZE];
         _current = _lastHistory = -1;
+        _oldest = 0;
     }
 
     /** Initializes a copy of MODEL. Does not modify or share structure with
      *  MODEL.  */
     Model(Model model) {
-        _width = model.width(); _height = model.height();
-        _cells = new boolean[_height][_width];
-        deepCopy(model._cells, _cells);
-        _score = model._score;
-        _history = model._history;
-        _streakLength = model._streakLength;
-        _hand = model._hand;
+        this(model, false);
+        _cells = _cells.clone();
+        _rowCounts = _rowCounts.clone();
+        _colCounts = _colCounts.clone();
+        _fullRows = _fullRows.clone();
+        _fullCols = _fullCols.clone();
+        _handIds = _handIds.clone();
         _current = model._current;
         _lastHistory = model._lastHistory;
-        for (GameState g : model._history.subList(0, model._lastHistory + 1)) {
-            _history.add(new GameState(g));
+        _oldest = model._oldest;
+        _historyLimit = model._historyLimit;
+        _savedScore = model._savedScore;
+        _savedStreakLength = model._savedStreakLength;
+        _savedHandSize = model._savedHandSize;
+        _savedRemaining = model._savedRemaining;
+        if (model._history != null) {
+            _history = new GameState[model._history.length];
+            _pending = new GameState(model._pending);
+            for (int i = _oldest; i <= _lastHistory; i += 1) {
+                _history[i % _history.length] =
+                    new GameState(model._history[i % _history.length]);
+            }
+        }
+    }
+
+    /** Initializes a model with the same board, hand, score, and streak
+     *  length as MODEL, sharing MODEL's board and hand if SHARED, and
+     *  with no saved states. */
+    private Model(Model model, boolean shared) {
+        _width = model._width;
+        _height = model._height;
+        _words = model._words;
+        _cells = model._cells;
+        _fullColumns = new long[_words];
+        _rowCounts = model._rowCounts;
+        _colCounts = model._colCounts;
+        _fullRows = model._fullRows;
+        _fullCols = model._fullCols;
+        _numFullRows = model._numFullRows;
+        _numFullCols = model._numFullCols;
+        _handIds = model._handIds;
+        _handSize = model._handSize;
+        _remaining = model._remaining;
+        _canPlace = model._canPlace.clone();
+        _canPlaceValid = model._canPlaceValid;
+        _score = model._score;
+        _streakLength = model._streakLength;
+        _key = model._key;
+        _current = _lastHistory = -1;
+        _oldest = 0;
+        if (shared) {
+            _shared = model._shared = true;
+        }
+    }
+
+    /** Return a new Model having the same board, hand, score, and streak
+     *  length as this one, but no saved states for undoing.  The two
+     *  models initially share their boards and hands, and each makes a
+     *  private copy of them the first time it modifies them, so a
+     *  fork that is only examined, or is discarded after a few moves,
+     *  costs little.  The result may be used by a thread other than the
+     *  one using this Model, but fork itself must be called by the
+     *  latter. */
+    Model fork() {
+        return new Model(this, true);
+    }
+
+    /** Return this Model to the state of a newly constructed Model of the
+     *  same dimensions: an empty board and hand, a score of 0, and no
+     *  saved states.  The history limit is unchanged.  Reuses this
+     *  Model's storage, so that one Model may play many games without
+     *  allocating. */
+    void reset() {
+        own();
+        Arrays.fill(_cells, 0);
+        Arrays.fill(_rowCounts, 0);
+        Arrays.fill(_colCounts, 0);
+        _numFullRows = _numFullCols = 0;
+        _handSize = 0;
+        _remaining = 0;
+        _canPlaceValid = false;
+        _score = 0;
+        _streakLength = 0;
+        _key = 0;
+        _current = _lastHistory = -1;
+        _oldest = 0;
+        if (_pending != null) {
+            _pending.clear();
         }
     }
 
@@ -66,37 +152,48 @@ class Model {
     /** Returns the number of pieces dealt to the hand since this Model
      *  was created or the hand was last cleared. */
     int handSize() {
-        return _hand.size();
+        return _handSize;
     }
+
     /** Return piece #K (numbering from 0) in the current hand. Returns
      *  null unless 0 <= K < handSize() and the indicated Piece has not
-     *  already been used. */
+     *  already been used.  The result is the canonical Piece (see
+     *  Piece.intern) equal to the one dealt. */
     Piece piece(int k) {
-        if (k < 0 || k >= _hand.size()) {
+        if (k < 0 || k >= _handSize || (_remaining & (1L << k)) == 0) {
             return null;
         }
-        return _hand.get(k);
+        return Piece.byId(Byte.toUnsignedInt(_handIds[k]));
     }
 
     /** Return true iff PIECE may be added to the board with its
      *  reference point at (ROW, COL). False if PIECE == null. */
     boolean placeable(Piece piece, int row, int col) {
-        if (piece == null) {
+        return fits(_cells, _width, _height, piece, row, col);
+    }
+
+    /** Return true iff PIECE may be added with its reference point at
+     *  (ROW, COL) to the WIDTH x HEIGHT board whose cells are given by
+     *  CELLS, laid out as for _cells.  False if PIECE == null. */
+    static boolean fits(long[] cells, int width, int height, Piece piece,
+                        int row, int col) {
+        if (piece == null || row < 0 || col < 0) {
             return false;
         }
-        if (row + piece.height() > _height) {
+        if (row + piece.height() > height) {
             return false;
         }
-        if (col + piece.width() > _width) {
+        if (col + piece.width() > width) {
             return false;
         }
-        for (int i = row; i < row + piece.height(); i++) {
-            for (int j = col; j < col + piece.width(); j++) {
-                if (piece.get(i - row, j - col)) {
-                    if (_cells[i][j]) {
-                        return false;
-                    }
-                }
+        int words = (width + WORD_SIZE - 1) / WORD_SIZE;
+        long[] masks = piece.shiftedMasks(width)[col];
+        int i = row * words + col / WORD_SIZE;
+        for (int r = 0; r < masks.length; r += 2, i += words) {
+            if ((cells[i] & masks[r]) != 0
+                || (masks[r + 1] != 0
+                    && (cells[i + 1] & masks[r + 1]) != 0)) {
+                return false;
             }
         }
         return true;
@@ -104,14 +201,7 @@ class Model {
 
     /** Return true iff PIECE may be added to the board at some position. */
     boolean placeable(Piece piece) {
-        for (int m = 0; m < height(); m++) {
-            for (int l = 0; l < width(); l++) {
-                if (placeable(piece, m, l)) {
-                    return true;
-                }
-            }
-        }
-        return false;
+        return placements(piece, 0, null, 0) > 0;
     }
 
     /** Return true iff piece(K) may be added to the board with its
@@ -120,23 +210,192 @@ class Model {
         return placeable(piece(k), row, col);
     }
 
-    /** Return true iff piece(K) may be added to the board at some position. */
+    /** Return true iff piece(K) may be added to the board at some position.
+     *  The answer is remembered until the board or piece(K) changes, and
+     *  is shared with other pieces in the hand that are equal to
+     *  piece(K). */
     boolean placeable(int k) {
-        return placeable(piece(k));
+        Piece piece = piece(k);
+        if (piece == null) {
+            return false;
+        }
+        if (!_canPlaceValid) {
+            Arrays.fill(_canPlace, UNKNOWN);
+            _canPlaceValid = true;
+        }
+        if (_canPlace[k] == UNKNOWN) {
+            byte result = placeable(piece) ? PLACEABLE : UNPLACEABLE;
+            for (long r = _remaining; r != 0; r &= r - 1) {
+                int j = Long.numberOfTrailingZeros(r);
+                if (_handIds[j] == _handIds[k]) {
+                    _canPlace[j] = result;
+                }
+            }
+        }
+        return _canPlace[k] == PLACEABLE;
+    }
+
+    /** Store the legal placements of piece(K) into MOVES, encoded as for
+     *  move(K, row, col), in order of increasing row and then column.
+     *  Returns the number of legal placements, which is 0 if piece(K)
+     *  is null.  Only the first MOVES.length of them are stored. */
+    int legalMoves(int k, int[] moves) {
+        return placements(piece(k), k, moves, 0);
+    }
+
+    /** Store the legal placements of all pieces in the hand into MOVES,
+     *  as for legalMoves(k, MOVES), in order of increasing piece number.
+     *  Returns the total number of legal placements.  Only the first
+     *  MOVES.length of them are stored. */
+    int legalMoves(int[] moves) {
+        int n = 0;
+        for (int k = 0; k < handSize(); k += 1) {
+            n = placements(piece(k), k, moves, n);
+        }
+        return n;
+    }
+
+    /** Return the encoding of the placement of piece #K with its reference
+     *  point at (ROW, COL), as used by legalMoves.  Requires that
+     *  0 <= K < 256 and that 0 <= ROW, COL < 4096. */
+    static int move(int k, int row, int col) {
+        return (k << MOVE_PIECE_SHIFT) | (row << MOVE_ROW_SHIFT) | col;
+    }
+
+    /** Return the piece number of the encoded placement MOVE. */
+    static int movePiece(int move) {
+        return move >>> MOVE_PIECE_SHIFT;
+    }
+
+    /** Return the row of the encoded placement MOVE. */
+    static int moveRow(int move) {
+        return (move >>> MOVE_ROW_SHIFT) & MOVE_COORD_MASK;
+    }
+
+    /** Return the column of the encoded placement MOVE. */
+    static int moveCol(int move) {
+        return move & MOVE_COORD_MASK;
+    }
+
+    /** Store the legal placements of PIECE, encoded as for move(K, row,
+     *  col), into MOVES starting at index N, and return N plus the number
+     *  of legal placements.  Only indices less than MOVES.length are
+     *  stored.  If MOVES is null, stops after finding one placement.
+     *  Returns N if PIECE is null. */
+    private int placements(Piece piece, int k, int[] moves, int n) {
+        if (piece == null) {
+            return n;
+        }
+        int lastRow = _height - piece.height(),
+            lastCol = _width - piece.width();
+        if (lastRow < 0 || lastCol < 0) {
+            return n;
+        }
+        if (_words > 1) {
+            for (int row = 0; row <= lastRow; row += 1) {
+                for (int col = 0; col <= lastCol; col += 1) {
+                    if (placeable(piece, row, col)) {
+                        if (moves == null) {
+                            return n + 1;
+                        } else if (n < moves.length) {
+                            moves[n] = move(k, row, col);
+                        }
+                        n += 1;
+                    }
+                }
+            }
+            return n;
+        }
+        long columns = -1L >>> (WORD_SIZE - 1 - lastCol);
+        for (int row = 0; row <= lastRow; row += 1) {
+            long open = columns;
+            for (int i = 0; i < piece.height() && open != 0; i += 1) {
+                long cells = _cells[row + i];
+                for (long m = piece.rowMask(i); m != 0; m &= m - 1) {
+                    open &= ~(cells >>> Long.numberOfTrailingZeros(m));
+                }
+            }
+            if (open != 0 && moves == null) {
+                return n + 1;
+            }
+            for (; open != 0; open &= open - 1) {
+                if (n < moves.length) {
+                    moves[n] = move(k, row, Long.numberOfTrailingZeros(open));
+                }
+                n += 1;
+            }
+        }
+        return n;
+    }
+
+    /** Return the rows and columns that placing PIECE with its reference
+     *  point at (ROW, COL) would fill completely, assuming that PIECE is
+     *  placeable there, encoded as described for clearsRow and
+     *  clearsColumn.  Neither changes this Model nor allocates, and so
+     *  is suitable for previewing placements at a high rate. */
+    int previewClears(Piece piece, int row, int col) {
+        return previewClears(_rowCounts, _colCounts, piece, row, col);
+    }
+
+    /** Return the rows and columns that placing PIECE with its reference
+     *  point at (ROW, COL) would fill completely, as for previewClears,
+     *  on a board whose rows and columns contain ROWCOUNTS[r] and
+     *  COLCOUNTS[c] filled cells, respectively. */
+    static int previewClears(int[] rowCounts, int[] colCounts, Piece piece,
+                             int row, int col) {
+        assert piece.height() <= PREVIEW_COLUMN_SHIFT
+            && piece.width() <= Integer.SIZE - PREVIEW_COLUMN_SHIFT;
+        int width = colCounts.length, height = rowCounts.length;
+        int result = 0;
+        long columns = 0;
+        for (int r = 0; r < piece.height(); r += 1) {
+            long mask = piece.rowMask(r);
+            columns |= mask;
+            if (rowCounts[row + r] + Long.bitCount(mask) == width) {
+                result |= 1 << r;
+            }
+        }
+        for (; columns != 0; columns &= columns - 1) {
+            int c = Long.numberOfTrailingZeros(columns);
+            int added = 0;
+            for (int r = 0; r < piece.height(); r += 1) {
+                added += (int) (piece.rowMask(r) >>> c) & 1;
+            }
+            if (colCounts[col + c] + added == height) {
+                result |= 1 << (PREVIEW_COLUMN_SHIFT + c);
+            }
+        }
+        return result;
+    }
+
+    /** Return true iff PREVIEW, a result of previewClears for a placement
+     *  at (ROW, COL), indicates that row ROW + R would be filled. */
+    static boolean clearsRow(int preview, int r) {
+        return r >= 0 && r < PREVIEW_COLUMN_SHIFT
+            && (preview & (1 << r)) != 0;
+    }
+
+    /** Return true iff PREVIEW, a result of previewClears for a placement
+     *  at (ROW, COL), indicates that column COL + C would be filled. */
+    static boolean clearsColumn(int preview, int c) {
+        return c >= 0 && c < Integer.SIZE - PREVIEW_COLUMN_SHIFT
+            && (preview & (1 << (PREVIEW_COLUMN_SHIFT + c))) != 0;
     }
 
     /** Place PIECE on the board at (ROW, COL), assuming it is placeable
-     *  there. Also updates score(). */
+     *  there. Also updates score().  Should PIECE overlap filled cells
+     *  nevertheless, they remain filled. */
     void place(Piece piece, int row, int col) {
         assert placeable(piece, row, col);
-        for (int moveR = 0; moveR < piece.height(); moveR++) {
-            for (int moveC = 0; moveC < piece.width(); moveC++) {
-                if (piece.get(moveR, moveC)) {
-                    _cells[moveR + row][moveC + col] = true;
-                    _score += 1;
-                }
+        long[] masks = piece.shiftedMasks(_width)[col];
+        int i = row * _words + col / WORD_SIZE;
+        for (int r = 0; r < masks.length; r += 2, i += _words) {
+            change(i, masks[r] & ~_cells[i]);
+            if (masks[r + 1] != 0) {
+                change(i + 1, masks[r + 1] & ~_cells[i + 1]);
             }
         }
+        _score += piece.size();
     }
 
     /** Place piece(K) on the board at (ROW, COL), assuming it is placeable
@@ -144,46 +403,47 @@ class Model {
      *  the hand). Also updates score(). */
     void place(int k, int row, int col) {
         place(piece(k), row, col);
-        _hand.set(k, null);
+        useHand(k);
     }
 
     /** Return an array COUNTS such that COUNTS[0][r] is the number of
      *  filled grid squares in row r and COUNTS[1][c] is the number of
      *  filled grid cells in column c. */
     int[][] rowColumnCounts() {
-        int[][] result = new int[][] { new int[_height], new int[_width] };
-        for (int rowCount = 0; rowCount < _height; rowCount++) {
-            for (int colCount = 0; colCount < _width; colCount++) {
-                if (get(rowCount, colCount)) {
-                    result [0][rowCount] += 1;
-                    result [1][colCount] += 1;
-                }
-            }
-        }
-        return result;
+        return new int[][] { _rowCounts.clone(), _colCounts.clone() };
+    }
+
+    /** Return the number of filled grid squares in row ROW. */
+    int rowCount(int row) {
+        return _rowCounts[row];
+    }
+
+    /** Return the number of filled grid squares in column COL. */
+    int columnCount(int col) {
+        return _colCounts[col];
     }
 
     /** Clear all cells currently in completely filled rows and columns.
      *  Also updates score(). */
     void clearFilledLines() {
-        int nrows, ncols;
-        int[][] counts = rowColumnCounts();
-        nrows = ncols = 0;
-        for (int fillRows = 0; fillRows < height(); fillRows++) {
-            if (counts[0][fillRows] == width()) {
-                nrows++;
-                for (int fillR = 0; fillR < width(); fillR++) {
-                    _cells[fillRows][fillR] = false;
-                }
+        int nrows = _numFullRows, ncols = _numFullCols;
+        _numFullRows = _numFullCols = 0;
+        for (int k = 0; k < ncols; k += 1) {
+            int col = _fullCols[k];
+            _fullColumns[col / WORD_SIZE] |= 1L << (col % WORD_SIZE);
+        }
+        for (int k = 0; k < nrows; k += 1) {
+            int i = _fullRows[k] * _words;
+            for (int w = 0; w < _words; w += 1, i += 1) {
+                change(i, _cells[i] & ~_fullColumns[w]);
             }
         }
-        for (int fillCols = 0; fillCols < width(); fillCols++) {
-            if (counts[1][fillCols] == height()) {
-                ncols++;
-                for (int fillC = 0; fillC < height(); fillC++) {
-                    _cells[fillC][fillCols] = false;
-                }
+        if (ncols > 0) {
+            for (int i = 0; i < _cells.length; i += 1) {
+                int w = i % _words;
+                change(i, _cells[i] & _fullColumns[w]);
             }
+            Arrays.fill(_fullColumns, 0);
         }
         if (nrows != 0 || ncols != 0) {
             _streakLength += 1;
@@ -209,22 +469,46 @@ class Model {
     /** Return true iff the current hand is empty (i.e., piece(k) is null
      *  for all k). */
     boolean handUsed() {
-        for (int empHand = 0; empHand < _hand.size(); empHand++) {
-            if (_hand.get(empHand) != null) {
-                return false;
-            }
-        }
-        return true;
+        return _remaining == 0;
     }
 
     /** Empty all Pieces from the current hand. */
     void clearHand() {
-        _hand.clear();
+        own();
+        if (_current >= 0) {
+            _pending.saveHand();
+        }
+        _key ^= handKeys();
+        _handSize = 0;
+        _remaining = 0;
     }
 
-    /** Add PIECE to the current hand.  Assumes PIECE is not null. */
+    /** Add PIECE to the current hand.  Assumes PIECE is not null.  The
+     *  hand may hold at most MAX_HAND_SIZE pieces. */
     void deal(Piece piece) {
-        _hand.add(piece);
+        if (_handSize == MAX_HAND_SIZE) {
+            throw badArgs("too many pieces in hand");
+        }
+        own();
+        if (_current >= 0) {
+            _pending.saveHand();
+        }
+        if (_handSize == _handIds.length) {
+            _handIds = Arrays.copyOf(_handIds, 2 * _handSize);
+        }
+        int id = piece.id();
+        _handIds[_handSize] = (byte) id;
+        _canPlace[_handSize] = UNKNOWN;
+        _remaining |= 1L << _handSize;
+        _key ^= handKey(_handSize, id);
+        _handSize += 1;
+    }
+
+    /** Return an immutable snapshot of the board, hand, and score, which
+     *  other threads may use to display this Model without touching
+     *  it. */
+    RenderSnapshot snapshot() {
+        return new RenderSnapshot(this);
     }
 
     /** Return current score. */
@@ -232,22 +516,57 @@ class Model {
         return _score;
     }
 
+    /** Return the number of consecutive placements, up to and including
+     *  the last, that have cleared at least one line. */
+    int streakLength() {
+        return _streakLength;
+    }
+
+    /** Return a 64-bit Zobrist key for the current position: the board
+     *  contents and the piece in each slot of the hand.  Models of the
+     *  same dimensions with the same position have the same key, and
+     *  those with different positions almost certainly have different
+     *  ones.  The score and streak length are not included.  The key is
+     *  maintained incrementally as the position changes, and so costs
+     *  nothing to retrieve. */
+    long zobristKey() {
+        return _key;
+    }
+
     /** Save the current state on the undo history. */
     void pushState() {
+        if (_history == null) {
+            _history = new GameState[_historyLimit == 0 ? INITIAL_HISTORY_SIZE
+                                     : _historyLimit + 1];
+            _pending = new GameState();
+        }
+        if (_current + 1 - _oldest == _history.length) {
+            if (_historyLimit == 0) {
+                resizeHistory(2 * _history.length);
+            } else {
+                _oldest += 1;
+            }
+        }
         _current += 1;
         _lastHistory = _current;
-        if (_current >= _history.size()) {
-            _history.add(new GameState());
-        }
-        _history.get(_current).saveState();
+        int slot = _current % _history.length;
+        GameState reused = _history[slot];
+        _pending.finish();
+        _history[slot] = _pending;
+        _pending = reused == null ? new GameState() : reused;
+        startPending();
     }
 
     /** Undo to the state saved by the last call to pushState, if any.
      *  Does nothing if at the initial board. */
     void undo() {
-        if (_current > 0) {
+        if (_current > _oldest) {
+            own();
+            rollBack();
+            _history[_current % _history.length].revert();
+            _canPlaceValid = false;
             _current -= 1;
-            _history.get(_current).restoreState();
+            startPending();
         }
     }
 
@@ -255,16 +574,71 @@ class Model {
      *  there are no available undone boards. */
     void redo() {
         if (_current < _lastHistory) {
+            own();
+            rollBack();
             _current += 1;
-            _history.get(_current).restoreState();
+            _history[_current % _history.length].replay();
+            _canPlaceValid = false;
+            startPending();
+        }
+    }
+
+    /** Return the maximum number of moves that may be undone, or 0 if
+     *  there is no limit. */
+    int historyLimit() {
+        return _historyLimit;
+    }
+
+    /** Limit the number of moves that may be undone to DEPTH, or remove the
+     *  limit if DEPTH is 0.  Once the limit is reached, each pushState
+     *  discards the oldest saved state.  Reducing the limit discards the
+     *  oldest states immediately and, if necessary, the states that
+     *  could otherwise be redone. */
+    void setHistoryLimit(int depth) {
+        if (depth < 0) {
+            throw badArgs("negative history limit");
+        }
+        _historyLimit = depth;
+        if (depth > 0 && _history != null) {
+            _oldest = Math.max(_oldest, _current - depth);
+            _lastHistory = Math.min(_lastHistory, _oldest + depth);
+            resizeHistory(depth + 1);
         }
     }
 
+    /** Move the states _history[_oldest .. _lastHistory] into a new array
+     *  of length SIZE, which must be large enough to hold them. */
+    private void resizeHistory(int size) {
+        GameState[] history = new GameState[size];
+        for (int i = _oldest; i <= _lastHistory; i += 1) {
+            history[i % size] = _history[i % _history.length];
+        }
+        _history = history;
+    }
+
+    /** Undo all changes made since the current state in _history was
+     *  saved or restored. */
+    private void rollBack() {
+        _pending.finish();
+        _pending.revert();
+    }
+
+    /** Begin recording changes from the current state in _history in
+     *  _pending. */
+    private void startPending() {
+        _pending.clear();
+        _savedScore = _score;
+        _savedStreakLength = _streakLength;
+        _savedHandSize = _handSize;
+        _savedRemaining = _remaining;
+        findFullLines();
+    }
+
     /** Returns true if this puzzle round is over because the hand is not empty
      *  but contains only Pieces that cannot be placed.  */
     boolean roundOver() {
-        for (int over = 0; over < _hand.size(); over++) {
-            if (placeable(_hand.get(over))) {
+        for (int k = 0; k < _handSize; k += 1) {
+            if (placeable(k)) {
                 return false;
             }
         }
@@ -280,46 +654,263 @@ class Model {
      *  or is currently filled.   That is, it returns true iff one may not
      *  add a Piece that would fill location (ROW, COL). */
     boolean get(int row, int col) {
-        return (_cells[row][col]);
+        long word = _cells[row * _words + col / WORD_SIZE];
+        return (word & (1L << (col % WORD_SIZE))) != 0;
+    }
+
+    /** Return the number of 64-bit words needed to hold a row of the
+     *  board, as returned by rowWord. */
+    int rowWords() {
+        return _words;
+    }
+
+    /** Return word W of the contents of row ROW, in which bit j is set iff
+     *  cell (ROW, 64 * W + j) is filled.  Bits denoting columns past the
+     *  right edge of the board are 0. */
+    long rowWord(int row, int w) {
+        return _cells[row * _words + w];
+    }
+
+    /** Toggle the cells denoted by the set bits of BITS in word I of
+     *  _cells, as for flip, recording the change for undoing.  Rows and
+     *  columns that become full are added to _fullRows and _fullCols. */
+    private void change(int i, long bits) {
+        if (bits == 0) {
+            return;
+        }
+        own();
+        long added = bits & ~_cells[i];
+        int row = i / _words, col0 = (i % _words) * WORD_SIZE;
+        flip(i, bits);
+        if (_current >= 0) {
+            _pending.recordFlip(i, bits);
+        }
+        if (added != 0 && _rowCounts[row] == _width) {
+            _fullRows[_numFullRows] = row;
+            _numFullRows += 1;
+        }
+        for (; added != 0; added &= added - 1) {
+            int col = col0 + Long.numberOfTrailingZeros(added);
+            if (_colCounts[col] == _height) {
+                _fullCols[_numFullCols] = col;
+                _numFullCols += 1;
+            }
+        }
+    }
+
+    /** Toggle the cells denoted by the set bits of BITS in word I of
+     *  _cells, keeping the row and column counts up to date. */
+    private void flip(int i, long bits) {
+        own();
+        _canPlaceValid = false;
+        long added = bits & ~_cells[i];
+        int row = i / _words, col0 = (i % _words) * WORD_SIZE;
+        _cells[i] ^= bits;
+        _rowCounts[row] += 2 * Long.bitCount(added) - Long.bitCount(bits);
+        for (; bits != 0; bits &= bits - 1) {
+            int bit = Long.numberOfTrailingZeros(bits);
+            _colCounts[col0 + bit] += (added & bits & -bits) == 0 ? -1 : 1;
+            _key ^= Utils.mix((long) i * WORD_SIZE + bit + 1);
+        }
+    }
+
+    /** Return the contribution to the Zobrist key of the piece with id ID
+     *  in slot K of the hand.  The arguments to Utils.mix are negative,
+     *  and so distinct from those used for cells. */
+    private static long handKey(int k, int id) {
+        return Utils.mix(~((long) id * MAX_HAND_SIZE + k));
+    }
+
+    /** Return the contribution of the entire hand to the Zobrist key. */
+    private long handKeys() {
+        long key = 0;
+        for (long r = _remaining; r != 0; r &= r - 1) {
+            int k = Long.numberOfTrailingZeros(r);
+            key ^= handKey(k, Byte.toUnsignedInt(_handIds[k]));
+        }
+        return key;
+    }
+
+    /** Mark piece #K of the hand as used. */
+    private void useHand(int k) {
+        own();
+        _key ^= handKey(k, Byte.toUnsignedInt(_handIds[k]));
+        _remaining &= ~(1L << k);
+        _canPlace[k] = UNKNOWN;
+    }
+
+    /** Set the hand to have HANDSIZE slots, of which those denoted by the
+     *  set bits of REMAINING hold unused pieces.  If IDS is non-null, it
+     *  gives the ids of the pieces in the slots; otherwise they are
+     *  unchanged. */
+    private void restoreHand(byte[] ids, int handSize, long remaining) {
+        _key ^= handKeys();
+        if (ids != null) {
+            if (_handIds.length < handSize) {
+                _handIds = new byte[ids.length];
+            }
+            System.arraycopy(ids, 0, _handIds, 0, handSize);
+        }
+        _handSize = handSize;
+        _remaining = remaining;
+        _key ^= handKeys();
+    }
+
+    /** If this Model shares its board or hand with another, replace
+     *  them with private copies. */
+    private void own() {
+        if (_shared) {
+            _cells = _cells.clone();
+            _rowCounts = _rowCounts.clone();
+            _colCounts = _colCounts.clone();
+            _fullRows = _fullRows.clone();
+            _fullCols = _fullCols.clone();
+            _handIds = _handIds.clone();
+            _shared = false;
+        }
+    }
+
+    /** Recompute the lists of full lines from the row and column
+     *  counts. */
+    private void findFullLines() {
+        own();
+        _numFullRows = _numFullCols = 0;
+        for (int row = 0; row < _height; row += 1) {
+            if (_rowCounts[row] == _width) {
+                _fullRows[_numFullRows] = row;
+                _numFullRows += 1;
+            }
+        }
+        for (int col = 0; col < _width; col += 1) {
+            if (_colCounts[col] == _height) {
+                _fullCols[_numFullCols] = col;
+                _numFullCols += 1;
+            }
+        }
     }
 
     @Override
     public String toString() {
-        Formatter out = new Formatter();
-        for (int row = 0; row < height(); row += 1) {
-            for (int col = 0; col < width(); col += 1) {
-                out.format(get(row, col) ? "*" : ".");
+        String nl = System.lineSeparator();
+        StringBuilder out =
+            new StringBuilder((_width + nl.length()) * _height
+                              + TEXT_PER_PIECE * (_handSize + 1));
+        for (int row = 0; row < _height; row += 1) {
+            for (int col = 0; col < _width; col += 1) {
+                out.append(get(row, col) ? '*' : '.');
             }
-            out.format("%n");
+            out.append(nl);
         }
-        out.format("Score: %d.%n", score());
-        out.format("Hand:%n%s", handToString());
+        out.append("Score: ").append(_score).append('.').append(nl);
+        out.append("Hand:").append(nl);
+        appendHand(out, nl);
         return out.toString();
     }
 
     /** Return a printable representation of the current hand. */
     String handToString() {
-        Formatter out = new Formatter();
-        for (int k = 0; k < handSize(); k += 1) {
-            out.format("%n%d:%n", k);
-            if (piece(k) == null) {
-                out.format("   empty%n");
+        StringBuilder out = new StringBuilder(TEXT_PER_PIECE * _handSize);
+        appendHand(out, System.lineSeparator());
+        return out.toString();
+    }
+
+    /** Append the representation of the current hand returned by
+     *  handToString to OUT, using NL as the line separator (except that
+     *  the rows of each piece are indented and end in newlines, as for
+     *  String.indent). */
+    private void appendHand(StringBuilder out, String nl) {
+        for (int k = 0; k < _handSize; k += 1) {
+            out.append(nl).append(k).append(':').append(nl);
+            Piece piece = piece(k);
+            if (piece == null) {
+                out.append("   empty").append(nl);
             } else {
-                out.format("%s", piece(k).toString().indent(3));
+                for (int r = 0; r < piece.height(); r += 1) {
+                    out.append("   ");
+                    for (int c = 0; c < piece.width(); c += 1) {
+                        out.append(piece.get(r, c) ? '*' : '.');
+                    }
+                    out.append('\n');
+                }
             }
         }
-        return out.toString();
     }
 
+    /** Values of _canPlace entries. */
+    private static final byte UNKNOWN = 0, PLACEABLE = 1, UNPLACEABLE = 2;
+
+    /** Approximate number of characters in the printed form of a piece
+     *  in the hand. */
+    private static final int TEXT_PER_PIECE = 32;
+
+    /** Initial length of _handIds. */
+    private static final int INITIAL_HAND_CAPACITY = 4;
+
+    /** Number of bits in one word of _cells. */
+    private static final int WORD_SIZE = Long.SIZE;
+
+    /** Positions and size of the fields of an encoded placement (see
+     *  move). */
+    private static final int
+        MOVE_PIECE_SHIFT = 24,
+        MOVE_ROW_SHIFT = 12,
+        MOVE_COORD_MASK = (1 << MOVE_ROW_SHIFT) - 1;
+
+    /** Position of the column bits in a result of previewClears. */
+    private static final int PREVIEW_COLUMN_SHIFT = 16;
+
     /** Dimensions of board. */
     private int _width, _height;
 
-    /** The current board contents, indexed by row in the first index and column
-     *  in the second. */
-    private boolean[][] _cells;
+    /** Number of words of _cells occupied by each row. */
+    private int _words;
+
+    /** The current board contents.  Row r occupies the _words words
+     *  starting at _cells[r * _words], and column c of that row is bit
+     *  c % WORD_SIZE of word c / WORD_SIZE.  A set bit denotes a filled
+     *  cell. */
+    private long[] _cells;
+
+    /** Scratch space used by clearFilledLines to hold the set of full
+     *  columns, laid out as for one row of _cells. */
+    private long[] _fullColumns;
+
+    /** True iff _cells, _rowCounts, _colCounts, _fullRows, _fullCols, and
+     *  _handIds may be shared with other Models, and so must be copied before
+     *  being modified. */
+    private boolean _shared;
+
+    /** The number of filled cells in each row and in each column. */
+    private int[] _rowCounts, _colCounts;
 
-    /** The current hand.  Items that have already been used are null. */
-    private ArrayList<Piece> _hand = new ArrayList<>();
+    /** _fullRows[0 .. _numFullRows-1] are the rows that have become full
+     *  since the last call to clearFilledLines, and likewise for
+     *  _fullCols and columns. */
+    private int[] _fullRows, _fullCols;
+
+    /** Number of valid entries in _fullRows and _fullCols. */
+    private int _numFullRows, _numFullCols;
+
+    /** _handIds[k] is the id (see Piece.id) of the piece dealt to slot k
+     *  of the hand, for 0 <= k < _handSize. */
+    private byte[] _handIds;
+
+    /** Number of slots in the current hand. */
+    private int _handSize;
+
+    /** Bit k is set iff slot k of the hand holds a piece that has not been
+     *  used. */
+    private long _remaining;
+
+    /** _canPlace[k] is PLACEABLE or UNPLACEABLE if it is known whether
+     *  piece(k) may be placed anywhere on the board, and otherwise
+     *  UNKNOWN.  Ignored (and all treated as UNKNOWN) unless
+     *  _canPlaceValid. */
+    private byte[] _canPlace;
+
+    /** False iff the board has changed since _canPlace was last
+     *  reset. */
+    private boolean _canPlaceValid;
 
     /** Current score: total number of cells that have been filled by
      *  place(...) plus the total number emptied by clearFilledLines(). */
@@ -331,8 +922,27 @@ class Model {
      *  calculation. */
     private int _streakLength;
 
+    /** Zobrist key of the current position: the exclusive or of
+     *  Utils.mix(i * WORD_SIZE + b + 1) for each set bit b of each word
+     *  _cells[i] (the argument is positive, since Utils.mix(0) is 0), and
+     *  of handKey(k, id) for each slot k of the hand holding an unused
+     *  piece with id ID. */
+    private long _key;
+
+    /** Initial length of _history when there is no limit on undoing. */
+    private static final int INITIAL_HISTORY_SIZE = 16;
+
+    /** Initial capacity of the change logs in a GameState. */
+    private static final int INITIAL_LOG_SIZE = 16;
+
     /** Represents enough of the state of a game to allow undoing and
-     *  redoing of moves. */
+     *  redoing of moves.  Rather than a copy of the board and hand, a
+     *  GameState records the changes that lead to its state from the
+     *  preceding state in _history: the words of _cells that were toggled,
+     *  the changes in score and streak length, and the hand before and
+     *  after (as a few primitive values, plus the piece ids if pieces were
+     *  dealt).  Undoing reverses those changes, and redoing reapplies
+     *  them. */
     private class GameState {
 
         /* GameState is an "inner class", meaning that every GameState is
@@ -341,65 +951,169 @@ class Model {
          * e.g., _width in a GameState refer to the _width field of the
          * Model that created the GameState. */
 
-        /** A holder for the _cells and _active instance variables of this
-         *  Model. */
+        /** A GameState recording no changes. */
         GameState() {
-            _savedCells = new boolean[_height][_width];
-            _savedScore = 0;
-            _savedStreakLength = 0;
+            _flipIndices = new int[INITIAL_LOG_SIZE];
+            _flipBits = new long[INITIAL_LOG_SIZE];
+            _oldIds = new byte[INITIAL_HAND_CAPACITY];
+            _newIds = new byte[INITIAL_HAND_CAPACITY];
         }
 
         /** A copy of STATE. */
         GameState(GameState state) {
-            _savedCells = new boolean[_height][_width];
-            deepCopy(state._savedCells, _savedCells);
-            _savedHand.addAll(state._savedHand);
-            _savedScore = state._savedScore;
-            _savedStreakLength = state._savedStreakLength;
-        }
-
-        /** Initialize to the current state of the Model. */
-        void saveState() {
-            deepCopy(_cells, _savedCells);
-            _savedHand.clear();
-            _savedHand.addAll(_hand);
-            _savedScore = _score;
-            _savedStreakLength = _streakLength;
-        }
-
-        /** Restore the current Model's state from our saved state. */
-        void restoreState() {
-            deepCopy(_savedCells, _cells);
-            _hand.clear();
-            _hand.addAll(_savedHand);
-            _score = _savedScore;
-            _streakLength = _savedStreakLength;
-        }
-
-        /** Contents of board. */
-        private boolean[][] _savedCells;
-        /** Contents of hand. */
-        private ArrayList<Piece> _savedHand = new ArrayList<>();
-        /** Current score. */
-        private int _savedScore;
-        /** Number of consecutive moves that had bonuses. */
-        private int _savedStreakLength;
-    }
-
-    /** A sequence of puzzle states. At any given time, _history[_current]
+            _flipIndices = state._flipIndices.clone();
+            _flipBits = state._flipBits.clone();
+            _numFlips = state._numFlips;
+            _dealt = state._dealt;
+            _oldIds = state._oldIds.clone();
+            _newIds = state._newIds.clone();
+            _oldHandSize = state._oldHandSize;
+            _newHandSize = state._newHandSize;
+            _oldRemaining = state._oldRemaining;
+            _newRemaining = state._newRemaining;
+            _scoreChange = state._scoreChange;
+            _streakChange = state._streakChange;
+        }
+
+        /** Forget all recorded changes. */
+        void clear() {
+            _numFlips = 0;
+            _dealt = false;
+            _scoreChange = _streakChange = 0;
+        }
+
+        /** Record that the bits BITS of word I of _cells were toggled. */
+        void recordFlip(int i, long bits) {
+            if (_numFlips == _flipIndices.length) {
+                _flipIndices = Arrays.copyOf(_flipIndices, 2 * _numFlips);
+                _flipBits = Arrays.copyOf(_flipBits, 2 * _numFlips);
+            }
+            _flipIndices[_numFlips] = i;
+            _flipBits[_numFlips] = bits;
+            _numFlips += 1;
+        }
+
+        /** Record the ids of the pieces in the hand, unless already
+         *  recorded.  Called before the first change to those ids since
+         *  the last saved or restored state. */
+        void saveHand() {
+            if (!_dealt) {
+                _dealt = true;
+                _oldIds = copyIds(_oldIds);
+            }
+        }
+
+        /** Record the changes in score, streak length, and hand since the
+         *  last saved or restored state. */
+        void finish() {
+            _scoreChange = _score - _savedScore;
+            _streakChange = _streakLength - _savedStreakLength;
+            _oldHandSize = _savedHandSize;
+            _oldRemaining = _savedRemaining;
+            _newHandSize = _handSize;
+            _newRemaining = _remaining;
+            if (_dealt) {
+                _newIds = copyIds(_newIds);
+            }
+        }
+
+        /** Reverse the recorded changes on the current Model. */
+        void revert() {
+            for (int j = 0; j < _numFlips; j += 1) {
+                flip(_flipIndices[j], _flipBits[j]);
+            }
+            restoreHand(_dealt ? _oldIds : null, _oldHandSize,
+                        _oldRemaining);
+            _score -= _scoreChange;
+            _streakLength -= _streakChange;
+        }
+
+        /** Reapply the recorded changes to the current Model. */
+        void replay() {
+            for (int j = 0; j < _numFlips; j += 1) {
+                flip(_flipIndices[j], _flipBits[j]);
+            }
+            restoreHand(_dealt ? _newIds : null, _newHandSize,
+                        _newRemaining);
+            _score += _scoreChange;
+            _streakLength += _streakChange;
+        }
+
+        /** Return IDS, or a new array if IDS is too small, after copying
+         *  _handIds[0 .. _handSize-1] into it. */
+        private byte[] copyIds(byte[] ids) {
+            if (ids.length < _handSize) {
+                ids = new byte[_handIds.length];
+            }
+            System.arraycopy(_handIds, 0, ids, 0, _handSize);
+            return ids;
+        }
+
+        /** _flipBits[j] are the bits toggled in word _flipIndices[j] of
+         *  _cells, for 0 <= j < _numFlips. */
+        private int[] _flipIndices;
+        /** Toggled bits. */
+        private long[] _flipBits;
+        /** Number of recorded cell changes. */
+        private int _numFlips;
+        /** True iff pieces were dealt or the hand cleared, so that the ids
+         *  of the pieces in the hand may have changed. */
+        private boolean _dealt;
+        /** If _dealt, the ids of the pieces in the hand before and after the
+         *  changes (see _handIds). */
+        private byte[] _oldIds, _newIds;
+        /** The size of the hand before and after the changes. */
+        private int _oldHandSize, _newHandSize;
+        /** The set of unused pieces in the hand before and after the
+         *  changes (see _remaining). */
+        private long _oldRemaining, _newRemaining;
+        /** Change in score. */
+        private int _scoreChange;
+        /** Change in the number of consecutive moves that had bonuses. */
+        private int _streakChange;
+    }
+
+    /** A circular buffer of puzzle states.  State number i is kept in
+     *  _history[i % _history.length], and states _oldest through
+     *  _lastHistory are available.  At any given time, state _current
      *  is the last puzzle state saved by pushState() (and not undone).
-     *  _history[_current+1] through _history[_lastHistory] are undone
-     *  states that can be redone.  _lastHistory is reset to _current after
-     *  each move.  _history only expands: there can be more than
-     *  _lastHistory+1 elements in it at any time, with those following
-     *  _lastHistory being available for re-use. */
-    private ArrayList<GameState> _history = new ArrayList<>();
-
-    /** The position of the current state in _history.  This is always
-     *  non-negative and <=_lastHistory.  */
+     *  States _current+1 through _lastHistory are undone states that can
+     *  be redone.  _lastHistory is reset to _current after each move.  Each
+     *  state records the changes from its predecessor, so state _oldest's
+     *  record is never used.  Unless _historyLimit is 0, _history has
+     *  _historyLimit + 1 elements, and pushState discards state _oldest to
+     *  make room when it is full.  Otherwise, _history doubles in size as
+     *  needed.  Slots that no longer hold available states are reused.
+     *  Null until the first call to pushState. */
+    private GameState[] _history;
+
+    /** The number of the earliest state available for undoing. */
+    private int _oldest;
+
+    /** The maximum number of moves that may be undone, or 0 if
+     *  unlimited. */
+    private int _historyLimit;
+
+    /** The changes made to the model since _history[_current] was saved
+     *  or restored.  Changes are recorded only after the first call to
+     *  pushState, before which this is null. */
+    private GameState _pending;
+
+    /** The score and streak length in the state _history[_current]. */
+    private int _savedScore, _savedStreakLength;
+
+    /** The values of _handSize and _remaining in the state
+     *  _history[_current]. */
+    private int _savedHandSize;
+    /** See _savedHandSize. */
+    private long _savedRemaining;
+
+    /** The number of the current state in _history.  This is always
+     *  >= _oldest and <=_lastHistory, except that it is -1 before the
+     *  first call to pushState.  */
     private int _current;
 
-    /** The index of the last valid state in _history, including those
-     *  that can be redone (with indices >_current). */
+    /** The number of the last valid state in _history, including those
+     *  that can be redone (with numbers >_current). */
     private int _lastHistory;
 }
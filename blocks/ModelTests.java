@@ -1,5 +1,7 @@
 package blocks;
 
+import java.util.Random;
+
 import org.junit.Test;
 import org.junit.Rule;
 import org.junit.rules.Timeout;
@@ -158,6 +160,75 @@ public class ModelTests {
         assertFalse("Wrong placeability for piece 6", m.placeable(pieces[6]));
     }
 
+    /** Check that remembered placeability follows changes to the board
+     *  and hand, including undoing. */
+    @Test
+    public void placeableCacheTest() {
+        Model m = new Model(3, 3);
+        dealHand(m, "** **", "** **", "*");
+        m.pushState();
+        assertTrue("Piece 0 should be placeable", m.placeable(0));
+        assertTrue("Piece 1 should be placeable", m.placeable(1));
+        m.place(2, 1, 1);
+        m.pushState();
+        assertFalse("Piece 0 should not be placeable", m.placeable(0));
+        assertFalse("Piece 1 should not be placeable", m.placeable(1));
+        assertFalse("Piece 2 has been used", m.placeable(2));
+        assertTrue("Round should be over", m.roundOver());
+        m.undo();
+        assertTrue("Piece 1 should be placeable after undo", m.placeable(1));
+        assertFalse("Round should not be over after undo", m.roundOver());
+        m.clearHand();
+        dealHand(m, "***");
+        m.place(0, 0, 0);
+        assertTrue("Empty hand should end round", m.roundOver());
+    }
+
+    /** Check that MODEL.legalMoves(NPIECE, ...) produces the same
+     *  placements as MODEL.placeable(NPIECE, row, col). */
+    private void checkLegalMoves(int npiece, Model model) {
+        int[] moves = new int[model.width() * model.height()];
+        int n = model.legalMoves(npiece, moves);
+        int k;
+        k = 0;
+        for (int r = 0; r < model.height(); r += 1) {
+            for (int c = 0; c < model.width(); c += 1) {
+                if (model.placeable(npiece, r, c)) {
+                    assertTrue("Too few legal moves", k < n);
+                    assertEquals("Wrong legal move",
+                                 Model.move(npiece, r, c), moves[k]);
+                    k += 1;
+                }
+            }
+        }
+        assertEquals("Too many legal moves", k, n);
+    }
+
+    @Test
+    public void legalMovesTest() {
+        Model m = new Model(5, 5);
+        dealHand(m, ".* *.", "** *. *.", "*. **", "** .*", "..* *** ..*",
+                 ".* *.", "*** .*. ***");
+        m.place(0, 3, 0);
+        m.place(1, 0, 0);
+        m.place(2, 0, 2);
+        m.place(4, 2, 2);
+        for (int k = 0; k < m.handSize(); k += 1) {
+            checkLegalMoves(k, m);
+        }
+        int[] moves = new int[1];
+        assertEquals("Wrong total legal moves", 3, m.legalMoves(moves));
+        assertEquals("Wrong piece in move", 3, Model.movePiece(moves[0]));
+        assertEquals("Wrong row in move", 0, Model.moveRow(moves[0]));
+        assertEquals("Wrong column in move", 3, Model.moveCol(moves[0]));
+
+        Model wide = new Model(67, 3);
+        dealHand(wide, "*** *.*", "*");
+        wide.place(0, 0, 62);
+        checkLegalMoves(0, wide);
+        checkLegalMoves(1, wide);
+    }
+
     @Test
     public void clearLinesTest() {
         Model m = new Model(4, 4);
@@ -187,6 +258,272 @@ public class ModelTests {
                      41, m.score());
     }
 
+    /** Check that the running row and column counts track placement,
+     *  line clearing, and undoing. */
+    @Test
+    public void countsTest() {
+        Model m = new Model(3, 3);
+        m.pushState();
+        dealHand(m, "*** *..", "* *");
+        m.place(0, 0, 0);
+        assertEquals("Wrong count for row 0", 3, m.rowCount(0));
+        assertEquals("Wrong count for column 0", 2, m.columnCount(0));
+        m.clearFilledLines();
+        m.pushState();
+        assertEquals("Row 0 not cleared", 0, m.rowCount(0));
+        assertEquals("Wrong count for column 0", 1, m.columnCount(0));
+        m.place(1, 1, 2);
+        m.clearFilledLines();
+        m.pushState();
+        assertEquals("Wrong count for column 2", 2, m.columnCount(2));
+        assertEquals("Wrong count for row 1", 2, m.rowCount(1));
+        m.undo();
+        assertEquals("Wrong count for column 2 after undo",
+                     0, m.columnCount(2));
+        assertEquals("Wrong count for row 1 after undo", 1, m.rowCount(1));
+        m.undo();
+        assertArrayEquals("Counts wrong after undoing to start",
+                          new int[][] { { 0, 0, 0 }, { 0, 0, 0 } },
+                          m.rowColumnCounts());
+    }
+
+    /** Check placement and line clearing on a board whose rows do not
+     *  fit in a single word. */
+    @Test
+    public void wideBoardTest() {
+        Model m = new Model(70, 2);
+        Piece p0 = new Piece("*** *.*"),
+            p1 = new Piece("**"),
+            p2 = new Piece("*");
+        assertTrue("Piece should fit across word boundary",
+                   m.placeable(p0, 0, 62));
+        assertFalse("Piece should not fit past right edge",
+                    m.placeable(p0, 0, 68));
+        m.place(p0, 0, 62);
+        assertTrue("Cell (0, 63) should be filled", m.get(0, 63));
+        assertTrue("Cell (1, 64) should be filled", m.get(1, 64));
+        assertFalse("Cell (1, 63) should be empty", m.get(1, 63));
+        assertFalse("Overlapping placement allowed", m.placeable(p1, 1, 63));
+        m.place(p2, 1, 63);
+        for (int c = 0; c < 62; c += 2) {
+            m.place(p1, 0, c);
+        }
+        m.place(p1, 0, 65);
+        m.place(p1, 0, 67);
+        m.place(p2, 0, 69);
+        int[][] counts = m.rowColumnCounts();
+        assertEquals("Row 0 should be full", 70, counts[0][0]);
+        assertEquals("Wrong count for row 1", 3, counts[0][1]);
+        assertEquals("Column 64 should be full", 2, counts[1][64]);
+        int score = m.score();
+        m.clearFilledLines();
+        checkCells(".".repeat(70) + " " + ".".repeat(70), m);
+        assertEquals("Wrong score after wide clear",
+                     score + 2 * (70 + 3 * 2) - 3, m.score());
+    }
+
+    /** Check that Zobrist keys depend only on position and are maintained
+     *  through moves, clearing, dealing, undoing, and redoing. */
+    @Test
+    public void zobristTest() {
+        Model m1 = new Model(4, 4), m2 = new Model(4, 4);
+        assertEquals("Empty models differ", m1.zobristKey(), m2.zobristKey());
+        m2.place(new Piece("*"), 0, 0);
+        assertNotEquals("Cell (0, 0) ignored",
+                        m1.zobristKey(), m2.zobristKey());
+        m2 = new Model(4, 4);
+        dealHand(m1, "****", "*", "** **");
+        dealHand(m2, "****", "*", "** **");
+        long initial = m1.zobristKey();
+        assertEquals("Same hands differ", initial, m2.zobristKey());
+        m1.pushState();
+        m1.place(1, 3, 3);
+        m1.place(2, 0, 0);
+        m2.place(2, 0, 0);
+        assertNotEquals("Different positions agree",
+                        m1.zobristKey(), m2.zobristKey());
+        m2.place(1, 3, 3);
+        assertEquals("Order of moves matters",
+                     m1.zobristKey(), m2.zobristKey());
+        m1.pushState();
+        long placed = m1.zobristKey();
+        m1.place(0, 2, 0);
+        m1.clearFilledLines();
+        m1.pushState();
+        Model m4 = new Model(4, 4);
+        m4.place(new Piece("** **"), 0, 0);
+        m4.place(new Piece("*"), 3, 3);
+        m4.deal(new Piece("*"));
+        assertNotEquals("Hand ignored", m1.zobristKey(), m4.zobristKey());
+        m4.clearHand();
+        m1.clearHand();
+        assertEquals("Cleared board differs from built one",
+                     m4.zobristKey(), m1.zobristKey());
+        assertEquals("Fork differs", m1.zobristKey(),
+                     m1.fork().zobristKey());
+        assertEquals("Copy differs", m1.zobristKey(),
+                     new Model(m1).zobristKey());
+        m1.undo();
+        assertEquals("Undo did not restore key", placed, m1.zobristKey());
+        m1.undo();
+        assertEquals("Undo did not restore key", initial, m1.zobristKey());
+        m1.redo();
+        assertEquals("Redo did not restore key", placed, m1.zobristKey());
+    }
+
+    /** Check that a hand may hold MAX_HAND_SIZE pieces and no more. */
+    @Test
+    public void handLimitTest() {
+        Model m = new Model(4, 4);
+        Piece p = new Piece("*");
+        for (int k = 0; k < Model.MAX_HAND_SIZE; k += 1) {
+            m.deal(p);
+        }
+        m.place(Model.MAX_HAND_SIZE - 1, 0, 0);
+        assertNull("Last piece not used", m.piece(Model.MAX_HAND_SIZE - 1));
+        assertEquals("Wrong piece", p, m.piece(Model.MAX_HAND_SIZE - 2));
+        assertFalse("Hand used up", m.handUsed());
+        try {
+            m.deal(p);
+            fail("Hand overfilled");
+        } catch (IllegalArgumentException excp) {
+            assertEquals(Model.MAX_HAND_SIZE, m.handSize());
+        }
+    }
+
+    /** Check that a fork and its original can be modified
+     *  independently. */
+    @Test
+    public void forkTest() {
+        Model m = new Model(4, 4);
+        dealHand(m, "** **", "*", "****");
+        m.place(0, 0, 0);
+        Model f = m.fork();
+        checkCells("**.. **.. .... ....", f);
+        assertEquals("Wrong score in fork", 4, f.score());
+        f.place(1, 3, 3);
+        checkCells("**.. **.. .... ...*", f);
+        checkCells("**.. **.. .... ....", m);
+        assertNotNull("Original hand changed by fork", m.piece(1));
+        m.place(2, 2, 0);
+        checkCells("**.. **.. **** ....", m);
+        checkCells("**.. **.. .... ...*", f);
+        assertNotNull("Fork hand changed by original", f.piece(2));
+        assertEquals("Wrong score in fork after move", 5, f.score());
+        f.pushState();
+        f.place(2, 2, 0);
+        f.pushState();
+        f.undo();
+        checkCells("**.. **.. .... ...*", f);
+        checkCells("**.. **.. **** ....", m);
+    }
+
+    /** Check that a snapshot shows the board, hand, and score of its
+     *  Model, and is unaffected by later changes to the Model. */
+    @Test
+    public void snapshotTest() {
+        Model m = new Model(5, 4);
+        dealHand(m, "***", "** **", "****");
+        m.place(0, 0, 0);
+        m.pushState();
+        RenderSnapshot snap = m.snapshot();
+        m.place(1, 1, 3);
+        m.place(2, 3, 0);
+        m.clearHand();
+        assertEquals("Wrong snapshot width", 5, snap.width());
+        assertEquals("Wrong snapshot height", 4, snap.height());
+        assertEquals("Wrong snapshot score", 3, snap.score());
+        assertTrue("Placed cell missing from snapshot", snap.get(0, 2));
+        assertFalse("Later move shown in snapshot", snap.get(1, 3));
+        assertEquals("Wrong snapshot row count", 3, snap.rowCount(0));
+        assertEquals("Wrong snapshot column count", 1,
+                     snap.columnCount(0));
+        assertEquals("Wrong snapshot hand size", 3, snap.handSize());
+        assertNull("Used piece in snapshot hand", snap.piece(0));
+        assertEquals("Wrong piece in snapshot hand", new Piece("** **"),
+                     snap.piece(1));
+        assertFalse("Used piece placeable in snapshot", snap.placeable(0));
+        assertTrue("Piece 1 not placeable in snapshot", snap.placeable(1));
+        assertTrue("Piece 2 not placeable in snapshot", snap.placeable(2));
+        assertFalse("Snapshot round over", snap.roundOver());
+        assertTrue("Legal placement rejected by snapshot",
+                   snap.placeable(1, 1, 3));
+        assertFalse("Overlapping placement accepted by snapshot",
+                    snap.placeable(1, 0, 1));
+        assertFalse("Overlapping placement accepted by snapshot",
+                    snap.placeable(2, 0, 1));
+        int clears = snap.previewClears(snap.piece(2), 3, 1);
+        assertFalse("Snapshot preview clears row", Model.clearsRow(clears, 0));
+        assertFalse("Snapshot preview clears column",
+                    Model.clearsColumn(clears, 0));
+    }
+
+    /** Check that previewClears agrees with placing pieces and counting
+     *  the filled cells in each line, on boards of several sizes. */
+    @Test
+    public void previewClearsTest() {
+        Random random = new Random(61);
+        Piece[] pieces = {
+            new Piece("*"), new Piece("****"), new Piece("* * * *"),
+            new Piece(".*. *** .*."), new Piece("**. .** ..*")
+        };
+        for (int size : new int[] { 4, 5, 8, 70 }) {
+            Model m = new Model(size, size);
+            m.pushState();
+            for (int trial = 0; trial < 200; trial += 1) {
+                Piece p = pieces[random.nextInt(pieces.length)];
+                int row = random.nextInt(size), col = random.nextInt(size);
+                if (!m.placeable(p, row, col)) {
+                    continue;
+                }
+                int clears = m.previewClears(p, row, col);
+                long key = m.zobristKey();
+                m.place(p, row, col);
+                m.pushState();
+                int[][] counts = m.rowColumnCounts();
+                for (int r = -1; r <= p.height(); r += 1) {
+                    assertEquals("Wrong row preview",
+                                 r >= 0 && r < p.height()
+                                 && counts[0][row + r] == size,
+                                 Model.clearsRow(clears, r));
+                }
+                for (int c = -1; c <= p.width(); c += 1) {
+                    assertEquals("Wrong column preview",
+                                 c >= 0 && c < p.width()
+                                 && counts[1][col + c] == size,
+                                 Model.clearsColumn(clears, c));
+                }
+                if (clears != 0 || random.nextInt(3) == 0) {
+                    m.undo();
+                    assertEquals(key, m.zobristKey());
+                } else {
+                    m.clearFilledLines();
+                }
+            }
+        }
+    }
+
+    /** Check that a copy of a Model does not share its hand or history
+     *  with the original. */
+    @Test
+    public void copyTest() {
+        Model m = new Model(4, 4);
+        m.pushState();
+        dealHand(m, "*", "**");
+        m.place(0, 0, 0);
+        m.pushState();
+        Model c = new Model(m);
+        c.place(1, 3, 0);
+        c.pushState();
+        assertNotNull("Original hand changed by copy", m.piece(1));
+        m.undo();
+        checkCells(".... .... .... ....", m);
+        c.undo();
+        checkCells("*... .... .... ....", c);
+        c.redo();
+        checkCells("*... .... .... **..", c);
+    }
+
     /** Check that dealing and hand size work correctly.*/
     @Test
     public void handTest1() {
@@ -283,6 +620,99 @@ public class ModelTests {
         checkCells(".... *..* *... ....", m);
     }
 
+    /** Checks that undoing and redoing a move that was followed by a
+     *  new deal restores the hand as well as the board. */
+    @Test
+    public void undoRedoDeal() {
+        Model m = new Model(4, 4);
+        Piece p0 = new Piece("**"),
+            p1 = new Piece("*"),
+            p2 = new Piece("***");
+        m.deal(p0);
+        m.pushState();
+        m.place(0, 0, 0);
+        m.clearFilledLines();
+        m.clearHand();
+        m.deal(p1);
+        m.deal(p2);
+        m.pushState();
+        m.place(0, 3, 3);
+        checkCells("**.. .... .... ...*", m);
+        m.undo();
+        checkCells(".... .... .... ....", m);
+        assertEquals("Wrong hand size after undo", 1, m.handSize());
+        assertEquals("Wrong piece after undo", p0, m.piece(0));
+        assertEquals("Wrong score after undo", 0, m.score());
+        m.redo();
+        checkCells("**.. .... .... ....", m);
+        assertEquals("Wrong hand size after redo", 2, m.handSize());
+        assertEquals("Wrong piece after redo", p2, m.piece(1));
+        assertEquals("Wrong score after redo", 2, m.score());
+    }
+
+    /** Checks that a history limit discards the oldest states while
+     *  undo and redo work normally within the limit. */
+    @Test
+    public void historyLimit() {
+        Model m = new Model(5, 5);
+        m.setHistoryLimit(2);
+        m.pushState();
+        dealHand(m, "*", "*", "*", "*");
+        checkMove(m, 0, 0, 0, "*.... ..... ..... ..... .....");
+        checkMove(m, 1, 1, 1, "*.... .*... ..... ..... .....");
+        checkMove(m, 2, 2, 2, "*.... .*... ..*.. ..... .....");
+        m.undo();
+        m.undo();
+        checkCells("*.... ..... ..... ..... .....", m);
+        m.undo();
+        checkCells("*.... ..... ..... ..... .....", m);
+        m.redo();
+        m.redo();
+        checkCells("*.... .*... ..*.. ..... .....", m);
+        assertEquals("Wrong score after redo", 3, m.score());
+        checkMove(m, 3, 3, 3, "*.... .*... ..*.. ...*. .....");
+        m.setHistoryLimit(1);
+        m.undo();
+        m.undo();
+        checkCells("*.... .*... ..*.. ..... .....", m);
+        m.setHistoryLimit(0);
+        m.redo();
+        checkCells("*.... .*... ..*.. ...*. .....", m);
+    }
+
+    /** Checks that with unlimited history, every one of enough moves to
+     *  grow the history several times may be undone. */
+    @Test
+    public void longHistory() {
+        Model m = new Model(6, 6);
+        Random random = new Random(5);
+        String[] boards = new String[70];
+        dealHand(m, "*", "**", "* *");
+        m.pushState();
+        for (int n = 0; n < boards.length; n += 1) {
+            boards[n] = m.toString();
+            assertFalse("Round unexpectedly over", m.roundOver());
+            int k, row, col;
+            do {
+                k = random.nextInt(m.handSize());
+                row = random.nextInt(6);
+                col = random.nextInt(6);
+            } while (!m.placeable(k, row, col));
+            m.place(k, row, col);
+            m.clearFilledLines();
+            if (m.handUsed()) {
+                m.clearHand();
+                dealHand(m, "*", "**", "* *");
+            }
+            m.pushState();
+        }
+        for (int n = boards.length - 1; n >= 0; n -= 1) {
+            m.undo();
+            assertEquals("Wrong state after undoing to move " + n,
+                         boards[n], m.toString());
+        }
+    }
+
     /** Place piece #PIECENUM from hand at (ROW, COL) in MODEL,
      *  clear any filled lines, save state for undoing, and check that the
      *  board is now as given by EXPECTED. */
@@ -0,0 +1,57 @@
+package blocks;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static blocks.Utils.*;
+
+/** A strategy for choosing moves in a Blocks puzzle.
+ *  @author Matilda Antwi
+ */
+interface MovePolicy {
+
+    /** Return the move to make next in MODEL, encoded as for Model.move, or
+     *  -1 if no piece in the hand may be placed.  MODEL is not modified
+     *  (although it may be forked). */
+    int select(Model model);
+
+    /** Names of the kinds of policy that create accepts. */
+    List<String> NAMES =
+        Collections.unmodifiableList(Arrays.asList("first", "random",
+                                                   "greedy", "lookahead",
+                                                   "expectimax", "mcts"));
+
+    /** Number of pieces examined by the "lookahead" policy. */
+    int DEFAULT_LOOKAHEAD = Controller.DEFAULT_HAND_SIZE;
+
+    /** Return a new policy of the kind denoted by NAME, using SEED to
+     *  initialize any random choices it makes.  The names are "first"
+     *  (the first legal placement of the first placeable piece),
+     *  "random" (a legal placement chosen uniformly at random), "greedy"
+     *  (the placement giving the best-looking board), and "lookahead"
+     *  (the placement from which the best-looking board is reachable
+     *  by placing up to DEFAULT_LOOKAHEAD pieces), and "expectimax" (the
+     *  first placement of the best plan for the whole hand found by an
+     *  ExpectimaxSolver with default parameters), and "mcts" (the move
+     *  chosen by a Monte Carlo tree search taking about 50 ms). */
+    static MovePolicy create(String name, long seed) {
+        switch (name) {
+        case "first":
+            return new FirstPolicy();
+        case "random":
+            return new RandomPolicy(seed);
+        case "greedy":
+            return new GreedyPolicy(1);
+        case "lookahead":
+            return new GreedyPolicy(DEFAULT_LOOKAHEAD);
+        case "expectimax":
+            return new ExpectimaxSolver(seed);
+        case "mcts":
+            return new MctsPolicy(seed);
+        default:
+            throw badArgs("unknown move policy: %s", name);
+        }
+    }
+
+}
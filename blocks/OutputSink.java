@@ -0,0 +1,23 @@
+package blocks;
+
+/** A destination for text output, which may hold output in a buffer
+ *  until flushed.
+ *  @author Matilda Antwi
+ */
+interface OutputSink {
+
+    /** Write TEXT. */
+    void append(CharSequence text);
+
+    /** Write C. */
+    void append(char c);
+
+    /** Write a line separator. */
+    default void newLine() {
+        append(System.lineSeparator());
+    }
+
+    /** Deliver all text written so far to its final destination. */
+    void flush();
+
+}
@@ -1,6 +1,7 @@
 package blocks;
 
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.Formatter;
 
 import static blocks.Utils.positions;
@@ -20,6 +21,10 @@ class Piece {
     static final int MAX_PIECE_WIDTH = 4,
         MAX_PIECE_HEIGHT = 4;
 
+    /** Maximum number of distinct piece shapes (so that ids fit in a
+     *  byte). */
+    static final int MAX_SHAPES = 256;
+
     /** A new Piece whose positions are denoted by PIECE.  PIECE contains
      *  a sequence of one or more rows separated by whitespace, where
      *  all rows are of the same length and contain only the characters
@@ -30,6 +35,60 @@ class Piece {
     Piece(String piece) {
         _positions = positions(piece);
         assert positionsCheck();
+        _rowMasks = new long[height()];
+        for (int row = 0; row < height(); row += 1) {
+            for (int col = 0; col < width(); col += 1) {
+                if (_positions[row][col]) {
+                    _rowMasks[row] |= 1L << col;
+                }
+            }
+            _size += Long.bitCount(_rowMasks[row]);
+        }
+        _key = Utils.mix(width() * (MAX_PIECE_HEIGHT + 1) + height());
+        for (long mask : _rowMasks) {
+            _key = Utils.mix(_key ^ mask);
+        }
+        _id = register(this);
+    }
+
+    /** Return the canonical Piece whose positions are denoted by PIECE (in
+     *  the format accepted by the constructor).  All calls with denotations
+     *  of the same shape return the same object.  Parses PIECE only if
+     *  it has not been seen before. */
+    static Piece parse(String piece) {
+        synchronized (REGISTRY_LOCK) {
+            Piece result = _parsed.get(piece);
+            if (result == null) {
+                result = intern(new Piece(piece));
+                if (_parsed.size() < MAX_PARSED) {
+                    _parsed.put(piece, result);
+                }
+            }
+            return result;
+        }
+    }
+
+    /** Return the canonical Piece equal to PIECE: the first Piece of that
+     *  shape to be constructed. */
+    static Piece intern(Piece piece) {
+        return byId(piece.id());
+    }
+
+    /** Return the canonical Piece whose id is ID.  Throws
+     *  IllegalArgumentException if there is none. */
+    static Piece byId(int id) {
+        if (id < 0 || id >= _numShapes) {
+            throw Utils.badArgs("no piece with id %d", id);
+        }
+        return _shapes[id];
+    }
+
+    /** Return the id of this Piece's shape: a small integer in the range
+     *  0 .. MAX_SHAPES - 1 that is the same for all equal Pieces, and
+     *  different for unequal ones.  Ids are assigned in order of first
+     *  construction. */
+    int id() {
+        return _id & BYTE_MASK;
     }
 
     /** Return the width of this Piece. */
@@ -48,6 +107,41 @@ class Piece {
         return _positions[row][col];
     }
 
+    /** Return the number of filled squares in this Piece. */
+    int size() {
+        return _size;
+    }
+
+    /** Return a 64-bit hash key for this Piece.  Equal Pieces have equal
+     *  keys, and unequal Pieces almost certainly have different ones. */
+    long key() {
+        return _key;
+    }
+
+    /** Return the filled squares of row ROW of this Piece as a bit mask, in
+     *  which bit c is set iff get(ROW, c). */
+    long rowMask(int row) {
+        return _rowMasks[row];
+    }
+
+    /** Return the row masks of this Piece shifted into position for each
+     *  possible reference column on a board that is WIDTH cells wide, with
+     *  rows packed into 64-bit words as for Model.  If S is the result and
+     *  C is a reference column, then S[C][2 * r] is the part of row r that
+     *  falls in word C / 64 of a board row, and S[C][2 * r + 1] is the part
+     *  that spills into the following word (0 if none).  S[C] is empty for
+     *  columns at which this Piece would extend past the edge of the board.
+     *  The result is computed once and cached for the most recently
+     *  requested width; it must not be modified. */
+    long[][] shiftedMasks(int width) {
+        ShiftedMasks shifted = _shifted;
+        if (shifted == null || shifted._boardWidth != width) {
+            shifted = new ShiftedMasks(width);
+            _shifted = shifted;
+        }
+        return shifted._masks;
+    }
+
     /** Return true iff _positions meets all the requirements for a correctly
      *  formed piece, with at least one filled square in the top and bottom
      *  rows and the left and right columns. */
@@ -101,16 +195,104 @@ class Piece {
 
     @Override
     public boolean equals(Object obj) {
-        Piece p = (Piece) obj;
-        return Utils.arrayEquals(_positions, p._positions);
+        if (!(obj instanceof Piece)) {
+            return false;
+        }
+        return _id == ((Piece) obj)._id;
     }
 
     @Override
     public int hashCode() {
-        return Arrays.deepHashCode(_positions);
+        return id();
+    }
+
+    /** Return the id of PIECE's shape, registering PIECE as the canonical
+     *  Piece of that shape if it is the first.  Throws
+     *  IllegalArgumentException if there would be more than MAX_SHAPES
+     *  shapes. */
+    private static byte register(Piece piece) {
+        synchronized (REGISTRY_LOCK) {
+            for (int id = 0; id < _numShapes; id += 1) {
+                Piece p = _shapes[id];
+                if (p._key == piece._key && p.width() == piece.width()
+                    && Arrays.equals(p._rowMasks, piece._rowMasks)) {
+                    return (byte) id;
+                }
+            }
+            if (_numShapes == MAX_SHAPES) {
+                throw Utils.badArgs("too many distinct piece shapes");
+            }
+            _shapes[_numShapes] = piece;
+            _numShapes += 1;
+            return (byte) (_numShapes - 1);
+        }
+    }
+
+    /** The masks of this Piece's rows, shifted for each reference column
+     *  on a board of a particular width. */
+    private class ShiftedMasks {
+
+        /** Shifted masks for a board WIDTH cells wide. */
+        ShiftedMasks(int width) {
+            _boardWidth = width;
+            _masks = new long[Math.max(0, width - width() + 1)][];
+            for (int col = 0; col < _masks.length; col += 1) {
+                int shift = col % Long.SIZE;
+                _masks[col] = new long[2 * height()];
+                for (int row = 0; row < height(); row += 1) {
+                    _masks[col][2 * row] = _rowMasks[row] << shift;
+                    if (shift != 0) {
+                        _masks[col][2 * row + 1] = _rowMasks[row] >>> -shift;
+                    }
+                }
+            }
+        }
+
+        /** The board width for which these masks were computed. */
+        private final int _boardWidth;
+        /** The shifted masks, as described for shiftedMasks. */
+        private final long[][] _masks;
     }
 
     /** The filled squares of this Piece. */
     private boolean[][] _positions;
 
+    /** The filled squares of each row of this Piece, as bit masks. */
+    private long[] _rowMasks;
+
+    /** The number of filled squares in this Piece. */
+    private int _size;
+
+    /** Hash key of this Piece, as returned by key(). */
+    private long _key;
+
+    /** Id of this Piece's shape, as returned by id() (stored as a signed
+     *  byte). */
+    private byte _id;
+
+    /** Mask converting a byte to an unsigned value. */
+    private static final int BYTE_MASK = 0xff;
+
+    /** Maximum number of denotations remembered by parse. */
+    private static final int MAX_PARSED = 1024;
+
+    /** Lock protecting the registry of shapes and parsed denotations. */
+    private static final Object REGISTRY_LOCK = new Object();
+
+    /** _shapes[0 .. _numShapes-1] are the canonical Pieces, indexed by
+     *  id. */
+    private static Piece[] _shapes = new Piece[MAX_SHAPES];
+
+    /** Number of distinct shapes registered.  Volatile so that byId may
+     *  read _shapes without locking: each element is stored before
+     *  _numShapes is increased to include it. */
+    private static volatile int _numShapes;
+
+    /** Maps denotations passed to parse to the Pieces they denote. */
+    private static HashMap<String, Piece> _parsed = new HashMap<>();
+
+    /** The most recently computed shifted masks, or null if none have
+     *  been requested. */
+    private volatile ShiftedMasks _shifted;
+
 }
@@ -63,6 +63,48 @@ public class PieceTests {
                 p.toString());
     }
 
+    @Test
+    public void maskTest() {
+        Piece p = new Piece(PIECE1);
+        assertEquals("Wrong size", 9, p.size());
+        assertEquals("Wrong mask for row 0", 7, p.rowMask(0));
+        assertEquals("Wrong mask for row 1", 5, p.rowMask(1));
+        assertEquals("Wrong mask for row 2", 4, p.rowMask(2));
+    }
+
+    /** Check that equal shapes share one canonical Piece and id. */
+    @Test
+    public void internTest() {
+        Piece p1 = Piece.parse("**. .**"),
+            p2 = Piece.parse("  **.\n  .**\n"),
+            p3 = new Piece("**. .**"),
+            p4 = Piece.parse("*** ..*");
+        assertSame("Different denotations not interned", p1, p2);
+        assertSame("Repeated parse not interned", p1, Piece.parse("**. .**"));
+        assertNotSame(p1, p3);
+        assertEquals("Equal pieces unequal", p1, p3);
+        assertEquals("Equal pieces have different ids", p1.id(), p3.id());
+        assertSame("Constructed piece not interned", p1, Piece.intern(p3));
+        assertNotEquals("Different pieces equal", p1, p4);
+        assertNotEquals("Different pieces have same id", p1.id(), p4.id());
+        assertSame("Wrong piece for id", p4, Piece.byId(p4.id()));
+        assertTrue("Id out of range",
+                   p4.id() >= 0 && p4.id() < Piece.MAX_SHAPES);
+    }
+
+    @Test
+    public void shiftedMaskTest() {
+        Piece p = new Piece(PIECE1);
+        long[][] masks = p.shiftedMasks(70);
+        assertEquals("Wrong number of reference columns", 68, masks.length);
+        assertEquals("Wrong shift at column 3", 5L << 3, masks[3][2]);
+        assertEquals("Unexpected spill at column 3", 0, masks[3][3]);
+        assertEquals("Wrong low word at column 62", 3L << 62, masks[62][0]);
+        assertEquals("Wrong spill at column 62", 1, masks[62][1]);
+        assertEquals("Wrong low word at column 65", 4L << 1, masks[65][4]);
+        assertSame("Masks not cached", masks, p.shiftedMasks(70));
+    }
+
     /** Sample input for 3x4 piece. */
     private static final String PIECE1 = "*** *.* ..* ***";
 
@@ -0,0 +1,73 @@
+package blocks;
+
+/** A CommandSource that plays automatically, choosing each move with a
+ *  MovePolicy.  It must also be the Controller's View, so that it sees
+ *  the model on which it is to play; it passes each update on to
+ *  another View (if any) for display.
+ *  @author Matilda Antwi
+ */
+class PolicySource implements CommandSource, View {
+
+    /** A source that chooses moves with POLICY and displays the model on
+     *  DISPLAY (if non-null).  After ROUNDS rounds end (never, if
+     *  ROUNDS is 0), it issues QUIT. */
+    PolicySource(MovePolicy policy, View display, int rounds) {
+        if (rounds < 0) {
+            throw Utils.badArgs("number of rounds must be non-negative");
+        }
+        _policy = policy;
+        _display = display;
+        _rounds = rounds;
+    }
+
+    @Override
+    public void update(Model model) {
+        _model = model;
+        if (_display != null) {
+            _display.update(model);
+        }
+    }
+
+    /** Returns a SET command for the next move chosen by the policy.  When
+     *  no move is possible, returns NEW to start another round, or QUIT if
+     *  the requested number of rounds has been played. */
+    @Override
+    public String getCommand() {
+        if (_model == null) {
+            return "QUIT";
+        }
+        int move = _policy.select(_model);
+        if (move >= 0) {
+            return String.format("SET %d %d %d", Model.movePiece(move),
+                                 Model.moveRow(move), Model.moveCol(move));
+        }
+        _model = null;
+        _roundsPlayed += 1;
+        if (_rounds > 0 && _roundsPlayed >= _rounds) {
+            return "QUIT";
+        }
+        return "NEW";
+    }
+
+    @Override
+    public boolean interactive() {
+        return false;
+    }
+
+    /** Return the number of rounds that have ended so far. */
+    int roundsPlayed() {
+        return _roundsPlayed;
+    }
+
+    /** Chooses moves. */
+    private MovePolicy _policy;
+    /** Displays the model, or null if none. */
+    private View _display;
+    /** Number of rounds to play, or 0 if unlimited. */
+    private int _rounds;
+    /** Number of rounds ended so far. */
+    private int _roundsPlayed;
+    /** Model most recently shown to this View, or null if it must not be
+     *  played further. */
+    private Model _model;
+}
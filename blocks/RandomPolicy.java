@@ -0,0 +1,33 @@
+package blocks;
+
+import java.util.Random;
+
+/** A MovePolicy that chooses uniformly among all legal moves.
+ *  @author Matilda Antwi
+ */
+class RandomPolicy implements MovePolicy {
+
+    /** A new policy whose choices are determined by SEED. */
+    RandomPolicy(long seed) {
+        _random = new Random(seed);
+    }
+
+    @Override
+    public int select(Model model) {
+        int n = model.legalMoves(_moves);
+        if (n > _moves.length) {
+            _moves = new int[n];
+            model.legalMoves(_moves);
+        }
+        if (n == 0) {
+            return -1;
+        }
+        return _moves[_random.nextInt(n)];
+    }
+
+    /** My PNRG. */
+    private Random _random;
+
+    /** Buffer for legal moves, reused between calls. */
+    private int[] _moves = new int[0];
+}
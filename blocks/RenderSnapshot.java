@@ -0,0 +1,141 @@
+package blocks;
+
+/** An immutable copy of the parts of a Model needed to display it: the
+ *  board as bit masks, the row and column counts, the hand as piece ids,
+ *  which pieces of the hand may be placed, and the score.  A snapshot
+ *  is made by the thread that owns the Model (see Model.snapshot) and
+ *  may then be read by any thread, so that displaying a Model never
+ *  touches the Model itself.
+ *  @author Matilda Antwi
+ */
+class RenderSnapshot {
+
+    /** A snapshot of the current state of MODEL. */
+    RenderSnapshot(Model model) {
+        _width = model.width();
+        _height = model.height();
+        _words = model.rowWords();
+        _cells = new long[_height * _words];
+        _rowCounts = new int[_height];
+        _colCounts = new int[_width];
+        for (int row = 0; row < _height; row += 1) {
+            for (int w = 0; w < _words; w += 1) {
+                _cells[row * _words + w] = model.rowWord(row, w);
+            }
+            _rowCounts[row] = model.rowCount(row);
+        }
+        for (int col = 0; col < _width; col += 1) {
+            _colCounts[col] = model.columnCount(col);
+        }
+        _handSize = model.handSize();
+        _handIds = new byte[_handSize];
+        for (int k = 0; k < _handSize; k += 1) {
+            Piece piece = model.piece(k);
+            if (piece != null) {
+                _handIds[k] = (byte) piece.id();
+                _remaining |= 1L << k;
+                if (model.placeable(k)) {
+                    _placeable |= 1L << k;
+                }
+            }
+        }
+        _roundOver = _placeable == 0;
+        _score = model.score();
+    }
+
+    /** Returns the width (number of columns of cells) of the board. */
+    int width() {
+        return _width;
+    }
+
+    /** Returns the height (number of rows of cells) of the board. */
+    int height() {
+        return _height;
+    }
+
+    /** Returns true iff cell (ROW, COL) is filled. */
+    boolean get(int row, int col) {
+        return (_cells[row * _words + col / Long.SIZE]
+                & (1L << (col % Long.SIZE))) != 0;
+    }
+
+    /** Return the number of filled cells in row ROW. */
+    int rowCount(int row) {
+        return _rowCounts[row];
+    }
+
+    /** Return the number of filled cells in column COL. */
+    int columnCount(int col) {
+        return _colCounts[col];
+    }
+
+    /** Returns the number of slots in the hand, as for Model.handSize. */
+    int handSize() {
+        return _handSize;
+    }
+
+    /** Return piece #K in the hand, or null if there is no such piece or
+     *  it has been used, as for Model.piece. */
+    Piece piece(int k) {
+        if (k < 0 || k >= _handSize || (_remaining & (1L << k)) == 0) {
+            return null;
+        }
+        return Piece.byId(Byte.toUnsignedInt(_handIds[k]));
+    }
+
+    /** Return true iff piece(K) may be placed somewhere on the board. */
+    boolean placeable(int k) {
+        return k >= 0 && k < _handSize && (_placeable & (1L << k)) != 0;
+    }
+
+    /** Return true iff PIECE may be placed with its reference point at
+     *  (ROW, COL).  False if PIECE is null. */
+    boolean placeable(Piece piece, int row, int col) {
+        return Model.fits(_cells, _width, _height, piece, row, col);
+    }
+
+    /** Return true iff piece(K) may be placed with its reference point at
+     *  (ROW, COL). */
+    boolean placeable(int k, int row, int col) {
+        return placeable(piece(k), row, col);
+    }
+
+    /** Return true iff no piece in the hand may be placed. */
+    boolean roundOver() {
+        return _roundOver;
+    }
+
+    /** Return the score. */
+    int score() {
+        return _score;
+    }
+
+    /** Return the rows and columns that placing PIECE with its reference
+     *  point at (ROW, COL) would fill completely, assuming that it is
+     *  placeable there, as for Model.previewClears. */
+    int previewClears(Piece piece, int row, int col) {
+        return Model.previewClears(_rowCounts, _colCounts, piece, row, col);
+    }
+
+    /** Dimensions of the board. */
+    private int _width, _height;
+    /** Number of words of _cells per row. */
+    private int _words;
+    /** The cells of the board, laid out as in Model: bit j of
+     *  _cells[r * _words + w] is set iff cell (r, 64 * w + j) is filled. */
+    private long[] _cells;
+    /** Number of filled cells in each row and in each column. */
+    private int[] _rowCounts, _colCounts;
+    /** Number of slots in the hand. */
+    private int _handSize;
+    /** Ids (see Piece.id) of the pieces in the hand. */
+    private byte[] _handIds;
+    /** Bit k is set iff slot k of the hand holds an unused piece. */
+    private long _remaining;
+    /** Bit k is set iff piece(k) may be placed somewhere. */
+    private long _placeable;
+    /** True iff no piece in the hand may be placed. */
+    private boolean _roundOver;
+    /** The score. */
+    private int _score;
+}
@@ -0,0 +1,520 @@
+package blocks;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static blocks.ReplayRecorder.*;
+import static blocks.Utils.*;
+
+/** A read-only view of an archive of recorded games: a file containing
+ *  one or more replays written by ReplayRecorder, one after another.
+ *  The file is memory-mapped rather than read, and indexed once into the
+ *  byte ranges of its games, so that each game is available as a view
+ *  of the mapped data.  A game starts with its first hand and ends
+ *  with the NEW, SIZE, or QUIT command that ended it, or at the end of
+ *  its replay.
+ *
+ *  The games may be rescored in parallel, each thread replaying games
+ *  directly from the mapped data into a single reused Model, so that
+ *  rescoring allocates nothing per game once each thread's Model has
+ *  reached its working size.  Placements that are illegal under the
+ *  current rules are skipped and counted.  Rescoring assumes unlimited
+ *  undoing, since the recorded --undo-limit is not part of a replay.
+ *  @author Matilda Antwi
+ */
+class ReplayArchive {
+
+    /** An archive whose contents are those of the file FILE.  Throws
+     *  IllegalArgumentException if FILE cannot be read, is not an archive,
+     *  or is too large to map in one piece (2GB). */
+    ReplayArchive(Path file) {
+        try (FileChannel channel =
+             FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw badArgs("archive %s is too large", file);
+            }
+            _data = channel.map(FileChannel.MapMode.READ_ONLY, 0,
+                                channel.size());
+        } catch (IOException excp) {
+            throw badArgs("could not read %s", file);
+        }
+        index();
+    }
+
+    /** Return the number of games in this archive. */
+    int games() {
+        return _numGames;
+    }
+
+    /** Return the records of game #G, without copying, as a read-only
+     *  buffer in the format written by ReplayRecorder (without the
+     *  header).  Piece numbers in the records may refer to pieces
+     *  defined in earlier games of the same replay; see piece. */
+    ByteBuffer game(int g) {
+        return _data.asReadOnlyBuffer().limit(_gameEnds[g])
+            .position(_gameStarts[g]).slice();
+    }
+
+    /** Return the piece numbered NUM in the replay containing game #G. */
+    Piece piece(int g, int num) {
+        return Piece.byId(pieceId(g, num));
+    }
+
+    /** Return the board width at the start of game #G. */
+    int width(int g) {
+        return _widths[g];
+    }
+
+    /** Return the board height at the start of game #G. */
+    int height(int g) {
+        return _heights[g];
+    }
+
+    /** Replay every game using THREADS threads, scoring it with the
+     *  current rules.  Afterwards, scores(), moves(), and
+     *  rejectedMoves() describe the results. */
+    void rescore(int threads) {
+        if (threads <= 0) {
+            throw badArgs("improper number of threads");
+        }
+        _scores = new int[_numGames];
+        _moves = new long[_numGames];
+        AtomicInteger next = new AtomicInteger();
+        AtomicInteger rejected = new AtomicInteger();
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        ArrayList<Future<?>> workers = new ArrayList<>();
+        long start = System.nanoTime();
+        for (int t = 0; t < threads; t += 1) {
+            workers.add(pool.submit(() -> {
+                Rescorer rescorer = new Rescorer();
+                for (int g = next.getAndIncrement(); g < _numGames;
+                     g = next.getAndIncrement()) {
+                    rescorer.replay(g);
+                }
+                rejected.addAndGet(rescorer._rejected);
+            }));
+        }
+        try {
+            for (Future<?> worker : workers) {
+                worker.get();
+            }
+        } catch (InterruptedException excp) {
+            throw new IllegalStateException("rescoring interrupted");
+        } catch (ExecutionException excp) {
+            throw new IllegalStateException(excp.getCause().getMessage());
+        } finally {
+            pool.shutdown();
+        }
+        _elapsedNanos = System.nanoTime() - start;
+        _rejected = rejected.get();
+    }
+
+    /** Return the scores of the games replayed by the last call to
+     *  rescore, indexed by game number. */
+    int[] scores() {
+        return _scores;
+    }
+
+    /** Return the numbers of moves in the games replayed by the last call
+     *  to rescore, indexed by game number. */
+    long[] moves() {
+        return _moves;
+    }
+
+    /** Return the number of placements skipped as illegal by the last
+     *  call to rescore. */
+    int rejectedMoves() {
+        return _rejected;
+    }
+
+    /** Return a printable summary of the results of the last call to
+     *  rescore, giving throughput and the distribution of scores. */
+    String report() {
+        double seconds = _elapsedNanos / 1e9;
+        long totalMoves = Arrays.stream(_moves).sum();
+        StringBuilder out = new StringBuilder();
+        out.append(msg("Games: %d  Moves: %d  Rejected moves: %d  "
+                       + "Time: %.3f s%n",
+                       _scores.length, totalMoves, _rejected, seconds));
+        out.append(msg("Throughput: %.1f games/s, %.1f moves/s%n",
+                       _scores.length / seconds, totalMoves / seconds));
+        out.append(Simulator.scoreSummary(_scores));
+        return out.toString();
+    }
+
+    /** Return the id (see Piece.id) of the piece numbered NUM in the
+     *  replay containing game #G. */
+    private int pieceId(int g, int num) {
+        int session = _gameSessions[g];
+        int i = _dictionaryStarts[session] + num;
+        if (num < 0 || i >= _dictionaryStarts[session + 1]) {
+            throw badArgs("undefined piece in archive");
+        }
+        return Byte.toUnsignedInt(_pieceIds[i]);
+    }
+
+    /** Find the games in _data and the pieces each replay defines. */
+    private void index() {
+        Cursor in = new Cursor();
+        in.set(0, _data.limit());
+        _dictionaryStarts = new int[INITIAL_INDEX_SIZE];
+        _pieceIds = new byte[INITIAL_INDEX_SIZE];
+        _gameStarts = new int[INITIAL_INDEX_SIZE];
+        _gameEnds = new int[INITIAL_INDEX_SIZE];
+        _gameSessions = new int[INITIAL_INDEX_SIZE];
+        _widths = new int[INITIAL_INDEX_SIZE];
+        _heights = new int[INITIAL_INDEX_SIZE];
+        int sessions, pieces;
+        sessions = pieces = 0;
+        while (!in.atEnd()) {
+            if (in.remaining() < HEADER_SIZE || in.int32() != MAGIC
+                || in.int8() != VERSION) {
+                throw badArgs("archive is malformed at byte %d", in._pos);
+            }
+            in.skip(Long.BYTES);
+            int width = (int) in.varint(), height = (int) in.varint();
+            in.varint();
+            if (sessions + 1 >= _dictionaryStarts.length) {
+                _dictionaryStarts = Arrays.copyOf(_dictionaryStarts,
+                                                  2 * sessions + 2);
+            }
+            _dictionaryStarts[sessions] = pieces;
+            boolean inGame = false;
+            while (!in.atEnd() && in.peek() != MAGIC_START) {
+                int start = in._pos;
+                int tag = in.int8();
+                if (tag == PIECE) {
+                    if (pieces == _pieceIds.length) {
+                        _pieceIds = Arrays.copyOf(_pieceIds, 2 * pieces);
+                    }
+                    _pieceIds[pieces] = (byte) in.piece().id();
+                    pieces += 1;
+                } else if (tag == DEAL) {
+                    if (!inGame) {
+                        addGame(start, sessions, width, height);
+                        inGame = true;
+                    }
+                    in.skipVarints((int) in.varint());
+                } else if (tag == COMMAND + CommandParser.SIZE) {
+                    width = (int) in.zigzag();
+                    height = (int) in.zigzag();
+                    in.zigzag();
+                    inGame = endGame(inGame, in._pos);
+                } else if (tag == COMMAND + CommandParser.NEW
+                           || tag == COMMAND + CommandParser.QUIT) {
+                    inGame = endGame(inGame, in._pos);
+                } else {
+                    in.skipCommand(tag);
+                }
+            }
+            endGame(inGame, in._pos);
+            sessions += 1;
+        }
+        _dictionaryStarts[sessions] = pieces;
+    }
+
+    /** Add a game that starts at byte START, in replay #SESSION, on a
+     *  WIDTH x HEIGHT board. */
+    private void addGame(int start, int session, int width, int height) {
+        if (width <= 0 || height <= 0) {
+            throw badArgs("improper board size in archive");
+        }
+        if (_numGames == _gameStarts.length) {
+            int size = 2 * _numGames;
+            _gameStarts = Arrays.copyOf(_gameStarts, size);
+            _gameEnds = Arrays.copyOf(_gameEnds, size);
+            _gameSessions = Arrays.copyOf(_gameSessions, size);
+            _widths = Arrays.copyOf(_widths, size);
+            _heights = Arrays.copyOf(_heights, size);
+        }
+        _gameStarts[_numGames] = start;
+        _gameSessions[_numGames] = session;
+        _widths[_numGames] = width;
+        _heights[_numGames] = height;
+        _numGames += 1;
+    }
+
+    /** If INGAME, end the last game added at byte END.  Returns false
+     *  (the new value of INGAME). */
+    private boolean endGame(boolean inGame, int end) {
+        if (inGame) {
+            _gameEnds[_numGames - 1] = end;
+        }
+        return false;
+    }
+
+    /** A position in _data, from which records are decoded.  Reads use
+     *  absolute indices, so Cursors in different threads may share
+     *  _data. */
+    private class Cursor {
+
+        /** Set this Cursor to decode bytes START up to END of _data. */
+        void set(int start, int end) {
+            _pos = start;
+            _end = end;
+        }
+
+        /** Return true iff all bytes have been decoded. */
+        boolean atEnd() {
+            return _pos >= _end;
+        }
+
+        /** Return the number of bytes remaining. */
+        int remaining() {
+            return _end - _pos;
+        }
+
+        /** Return the next byte, unsigned, without consuming it. */
+        int peek() {
+            return Byte.toUnsignedInt(_data.get(_pos));
+        }
+
+        /** Consume and return the next byte, unsigned. */
+        int int8() {
+            int result = peek();
+            _pos += 1;
+            return result;
+        }
+
+        /** Consume and return the next four bytes as an int. */
+        int int32() {
+            int result = _data.getInt(_pos);
+            _pos += Integer.BYTES;
+            return result;
+        }
+
+        /** Skip N bytes. */
+        void skip(int n) {
+            _pos += n;
+        }
+
+        /** Consume and return a varint (see ReplayRecorder). */
+        long varint() {
+            long result = 0;
+            for (int shift = 0; shift < Long.SIZE; shift += VARINT_SHIFT) {
+                if (atEnd()) {
+                    break;
+                }
+                int b = int8();
+                result |= (long) (b & VARINT_BITS) << shift;
+                if ((b & VARINT_MORE) == 0) {
+                    return result;
+                }
+            }
+            throw badArgs("archive is truncated or malformed");
+        }
+
+        /** Consume and return a zigzag-encoded varint. */
+        long zigzag() {
+            long v = varint();
+            return (v >>> 1) ^ -(v & 1);
+        }
+
+        /** Skip N varints. */
+        void skipVarints(int n) {
+            for (int i = 0; i < n; i += 1) {
+                varint();
+            }
+        }
+
+        /** Skip the remainder of a record of any kind other than PIECE
+         *  or DEAL, whose tag TAG has been consumed. */
+        void skipCommand(int tag) {
+            int kind = tag - COMMAND;
+            if (tag == SMALL_SET) {
+                skip(1);
+            } else if (tag == BAD_COMMAND) {
+                long length = varint();
+                if (length < 0 || length > _end - _pos) {
+                    throw badArgs("archive is truncated");
+                }
+                skip((int) length);
+            } else if (kind >= CommandParser.EMPTY
+                       && kind <= CommandParser.BOARD) {
+                skipVarints(CommandParser.operands(kind));
+            } else {
+                throw badArgs("archive is malformed at byte %d", _pos - 1);
+            }
+            if (_pos > _end) {
+                throw badArgs("archive is truncated");
+            }
+        }
+
+        /** Consume the remainder of a PIECE record and return the piece
+         *  it defines. */
+        Piece piece() {
+            int width = (int) varint(), height = (int) varint();
+            if (width <= 0 || width > Long.SIZE || height <= 0
+                || height > Long.SIZE) {
+                throw badArgs("bad piece in archive");
+            }
+            StringBuilder text = new StringBuilder();
+            for (int r = 0; r < height; r += 1) {
+                long mask = varint();
+                text.append(r == 0 ? "" : " ");
+                for (int c = 0; c < width; c += 1) {
+                    text.append((mask & (1L << c)) != 0 ? '*' : '.');
+                }
+            }
+            return Piece.parse(text.toString());
+        }
+
+        /** Position of the next byte to decode. */
+        private int _pos;
+        /** Limit of the bytes to decode. */
+        private int _end;
+    }
+
+    /** Replays games into a reused Model.  Each thread has its own. */
+    private class Rescorer {
+
+        /** Replay game #G, recording its score and moves. */
+        void replay(int g) {
+            if (_model == null || _model.width() != _widths[g]
+                || _model.height() != _heights[g]) {
+                _model = new Model(_widths[g], _heights[g]);
+            } else {
+                _model.reset();
+            }
+            _in.set(_gameStarts[g], _gameEnds[g]);
+            long moves;
+            moves = 0;
+            while (!_in.atEnd()) {
+                int tag = _in.int8();
+                int k, row, col;
+                if (tag == DEAL) {
+                    deal(g);
+                    _model.pushState();
+                    continue;
+                } else if (tag == SMALL_SET) {
+                    int b = _in.int8();
+                    k = b >> 6;
+                    row = (b >> 3) & 7;
+                    col = b & 7;
+                } else if (tag == COMMAND + CommandParser.SET) {
+                    k = (int) _in.zigzag();
+                    row = (int) _in.zigzag();
+                    col = (int) _in.zigzag();
+                } else if (tag == COMMAND + CommandParser.UNDO) {
+                    _model.undo();
+                    continue;
+                } else if (tag == COMMAND + CommandParser.REDO) {
+                    _model.redo();
+                    continue;
+                } else if (tag == PIECE) {
+                    skipPiece();
+                    continue;
+                } else {
+                    _in.skipCommand(tag);
+                    continue;
+                }
+                if (place(g, k, row, col)) {
+                    moves += 1;
+                }
+            }
+            _scores[g] = _model.score();
+            _moves[g] = moves;
+        }
+
+        /** Place piece K at (ROW, COL) in game #G as the Controller
+         *  would, dealing the next hand if it is recorded next (after any
+         *  records of its new shapes) and the hand is used up.  Returns
+         *  false, doing nothing, if the placement is illegal. */
+        private boolean place(int g, int k, int row, int col) {
+            if (_model.roundOver()) {
+                return false;
+            }
+            if (k < 0 || k >= _model.handSize()
+                || !_model.placeable(k, row, col)) {
+                _rejected += 1;
+                return false;
+            }
+            _model.place(k, row, col);
+            _model.clearFilledLines();
+            while (!_in.atEnd() && _in.peek() == PIECE) {
+                _in.int8();
+                skipPiece();
+            }
+            if (_model.handUsed() && !_in.atEnd() && _in.peek() == DEAL) {
+                _in.int8();
+                deal(g);
+            }
+            _model.pushState();
+            return true;
+        }
+
+        /** Skip the rest of the PIECE record whose tag has just been
+         *  consumed. */
+        private void skipPiece() {
+            _in.varint();
+            _in.skipVarints((int) _in.varint());
+        }
+
+        /** Replace the hand with the one in the DEAL record whose tag
+         *  has just been consumed, in game #G. */
+        private void deal(int g) {
+            _model.clearHand();
+            int n = (int) _in.varint();
+            for (int i = 0; i < n; i += 1) {
+                _model.deal(Piece.byId(pieceId(g, (int) _in.varint())));
+            }
+        }
+
+        /** The Model used for replaying. */
+        private Model _model;
+        /** Decodes the game being replayed. */
+        private Cursor _in = new Cursor();
+        /** Number of illegal placements skipped. */
+        private int _rejected;
+    }
+
+    /** Size of a replay header, excluding its varints. */
+    private static final int HEADER_SIZE =
+        Integer.BYTES + 1 + Long.BYTES;
+
+    /** The first byte of MAGIC, which is not a valid record tag, and so
+     *  marks the start of the next replay. */
+    private static final int MAGIC_START = MAGIC >>> (Integer.SIZE - 8);
+
+    /** Initial lengths of the index arrays. */
+    private static final int INITIAL_INDEX_SIZE = 16;
+
+    /** The contents of the archive. */
+    private MappedByteBuffer _data;
+
+    /** _dictionaryStarts[s] is the index in _pieceIds of the first piece
+     *  defined in replay #s.  The last entry is the total number of
+     *  pieces. */
+    private int[] _dictionaryStarts;
+    /** The ids of the pieces defined in the archive, in order. */
+    private byte[] _pieceIds;
+
+    /** Number of games in the archive. */
+    private int _numGames;
+    /** Byte ranges of the games in _data. */
+    private int[] _gameStarts, _gameEnds;
+    /** _gameSessions[g] is the number of the replay containing game #g. */
+    private int[] _gameSessions;
+    /** Board dimensions at the start of each game. */
+    private int[] _widths, _heights;
+
+    /** Score of each game rescored. */
+    private int[] _scores = new int[0];
+    /** Number of moves of each game rescored. */
+    private long[] _moves = new long[0];
+    /** Number of illegal placements skipped while rescoring. */
+    private int _rejected;
+    /** Duration of the last rescoring, in nanoseconds. */
+    private long _elapsedNanos;
+}
@@ -0,0 +1,189 @@
+package blocks;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+
+import static blocks.ReplayRecorder.*;
+import static blocks.Utils.*;
+
+/** A CommandSource and PuzzleSource that replays games recorded by a
+ *  ReplayRecorder, supplying the hands and commands in the order in
+ *  which the recording Controller received them.  Commands are
+ *  reconstructed from their parsed form, so numerals appear in their
+ *  simplest form.
+ *  @author Matilda Antwi
+ */
+class ReplayPlayer implements CommandSource, PuzzleSource {
+
+    /** A player reading a record from IN.  Throws IllegalArgumentException
+     *  if IN does not start with a valid header. */
+    ReplayPlayer(InputStream in) {
+        _in = new DataInputStream(new BufferedInputStream(in));
+        try {
+            if (_in.readInt() != MAGIC || _in.readByte() != VERSION) {
+                throw badArgs("not a replay file");
+            }
+            _seed = _in.readLong();
+            _width = (int) readVarint();
+            _height = (int) readVarint();
+            _handSize = (int) readVarint();
+        } catch (IOException excp) {
+            throw badArgs("not a replay file");
+        }
+    }
+
+    /** Return the seed recorded in the header. */
+    long seed() {
+        return _seed;
+    }
+
+    /** Return the initial board width recorded in the header. */
+    int width() {
+        return _width;
+    }
+
+    /** Return the initial board height recorded in the header. */
+    int height() {
+        return _height;
+    }
+
+    /** Return the initial hand size recorded in the header. */
+    int handSize() {
+        return _handSize;
+    }
+
+    /** Returns the next recorded command, or QUIT at the end of the
+     *  record. */
+    @Override
+    public String getCommand() {
+        int tag = nextTag();
+        try {
+            switch (tag) {
+            case -1:
+                return "QUIT";
+            case SMALL_SET:
+                int b = _in.readUnsignedByte();
+                return msg("SET %d %d %d", b >> 6, (b >> 3) & 7, b & 7);
+            case BAD_COMMAND:
+                long length = readVarint();
+                if (length < 0 || length > Integer.MAX_VALUE) {
+                    throw badArgs("bad command in replay");
+                }
+                byte[] text = new byte[(int) length];
+                _in.readFully(text);
+                return new String(text, StandardCharsets.UTF_8);
+            default:
+                int kind = tag - COMMAND;
+                if (kind < CommandParser.EMPTY
+                    || kind > CommandParser.BOARD) {
+                    throw badArgs("replay out of step: expected a command");
+                }
+                StringBuilder cmnd =
+                    new StringBuilder(CommandParser.keyword(kind));
+                for (int i = 0; i < CommandParser.operands(kind); i += 1) {
+                    long v = readVarint();
+                    cmnd.append(' ').append((v >>> 1) ^ -(v & 1));
+                }
+                return cmnd.toString();
+            }
+        } catch (IOException excp) {
+            throw badArgs("truncated replay");
+        }
+    }
+
+    /** Deals the next recorded hand into MODEL, returning false at the end
+     *  of the record.  HANDSIZE is ignored: the recorded hand is used. */
+    @Override
+    public boolean deal(Model model, int handSize) {
+        model.clearHand();
+        int tag = nextTag();
+        if (tag == -1) {
+            return false;
+        } else if (tag != DEAL) {
+            throw badArgs("replay out of step: expected a hand");
+        }
+        try {
+            int n = (int) readVarint();
+            for (int k = 0; k < n; k += 1) {
+                int num = (int) readVarint();
+                if (num >= _pieces.size()) {
+                    throw badArgs("undefined piece in replay");
+                }
+                model.deal(_pieces.get(num));
+            }
+        } catch (IOException excp) {
+            throw badArgs("truncated replay");
+        }
+        return true;
+    }
+
+    /** Has no effect: hands come from the record. */
+    @Override
+    public void setSeed(long seed) {
+    }
+
+    @Override
+    public boolean interactive() {
+        return false;
+    }
+
+    /** Read any PIECE records and return the tag of the following record,
+     *  or -1 at the end of the record. */
+    private int nextTag() {
+        try {
+            while (true) {
+                int tag = _in.read();
+                if (tag != PIECE) {
+                    return tag;
+                }
+                int width = (int) readVarint(), height = (int) readVarint();
+                if (width <= 0 || width > Long.SIZE || height <= 0
+                    || height > MAX_PIECE_ROWS) {
+                    throw badArgs("bad piece in replay");
+                }
+                StringBuilder text = new StringBuilder();
+                for (int r = 0; r < height; r += 1) {
+                    long mask = readVarint();
+                    text.append(r == 0 ? "" : " ");
+                    for (int c = 0; c < width; c += 1) {
+                        text.append((mask & (1L << c)) != 0 ? '*' : '.');
+                    }
+                }
+                _pieces.add(Piece.parse(text.toString()));
+            }
+        } catch (IOException excp) {
+            throw badArgs("truncated replay");
+        }
+    }
+
+    /** Read a value written by ReplayRecorder.writeVarint. */
+    private long readVarint() throws IOException {
+        long result = 0;
+        for (int shift = 0; shift < Long.SIZE; shift += VARINT_SHIFT) {
+            int b = _in.readUnsignedByte();
+            result |= (long) (b & VARINT_BITS) << shift;
+            if ((b & VARINT_MORE) == 0) {
+                return result;
+            }
+        }
+        throw new EOFException("malformed varint");
+    }
+
+    /** Limit on the number of rows in a recorded piece. */
+    private static final int MAX_PIECE_ROWS = 64;
+
+    /** Source of the record. */
+    private DataInputStream _in;
+    /** Header values. */
+    private long _seed;
+    /** Header values. */
+    private int _width, _height, _handSize;
+    /** The pieces defined so far, indexed by their numbers in the
+     *  record. */
+    private ArrayList<Piece> _pieces = new ArrayList<>();
+}
@@ -0,0 +1,178 @@
+package blocks;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/** Writes a compact binary record of the games played by a Controller,
+ *  which a ReplayPlayer can read back.
+ *
+ *  A record starts with a header: the int MAGIC, the byte VERSION, the
+ *  long seed, and the initial board width, board height, and hand size
+ *  as varints (see writeVarint).  Then follow records of the hands
+ *  dealt and the commands received, each starting with a tag byte:
+ *    - PIECE: defines the next piece number in this file (numbering from
+ *          0), given as its width, height, and one row mask per row
+ *          (bit c set iff column c is filled), all as varints.  Pieces
+ *          are defined just before their first use, so that the file
+ *          does not depend on the ids of the running program.
+ *    - DEAL: a hand, given as the number of pieces and the piece
+ *          number of each, as varints.
+ *    - SMALL_SET: a SET command whose operands k, r, c satisfy
+ *          0 <= k < 4 and 0 <= r, c < 8, packed into one following
+ *          byte as (k << 6) | (r << 3) | c.
+ *    - BAD_COMMAND: an unrecognized command, given as the length in
+ *          bytes of its text encoded in UTF-8, as a varint, followed by
+ *          those bytes.
+ *    - COMMAND + kind: any other command of the given kind (see
+ *          CommandParser), followed by its operands as zigzag varints.
+ *  @author Matilda Antwi
+ */
+class ReplayRecorder {
+
+    /** First four bytes of a replay file ("BLKR"). */
+    static final int MAGIC = 0x424c4b52;
+
+    /** Version of the format written. */
+    static final byte VERSION = 2;
+
+    /** Record tags. */
+    static final int
+        PIECE = 1, DEAL = 2, SMALL_SET = 3, BAD_COMMAND = 4, COMMAND = 16;
+
+    /** Limits on the operands of a SMALL_SET record. */
+    static final int SMALL_PIECE_LIMIT = 4, SMALL_COORD_LIMIT = 8;
+
+    /** A recorder writing to OUT a record of games started with seed SEED
+     *  and initial parameters WIDTH, HEIGHT, and HANDSIZE. */
+    ReplayRecorder(OutputStream out, long seed, int width, int height,
+                   int handSize) {
+        _out = new DataOutputStream(new BufferedOutputStream(out));
+        Arrays.fill(_pieceNumbers, -1);
+        try {
+            _out.writeInt(MAGIC);
+            _out.writeByte(VERSION);
+            _out.writeLong(seed);
+            writeVarint(width);
+            writeVarint(height);
+            writeVarint(handSize);
+        } catch (IOException excp) {
+            throw failure(excp);
+        }
+    }
+
+    /** Record that MODEL's current hand has just been dealt. */
+    void recordHand(Model model) {
+        try {
+            int n = model.handSize();
+            for (int k = 0; k < n; k += 1) {
+                Piece piece = model.piece(k);
+                if (_pieceNumbers[piece.id()] < 0) {
+                    definePiece(piece);
+                }
+            }
+            _out.writeByte(DEAL);
+            writeVarint(n);
+            for (int k = 0; k < n; k += 1) {
+                writeVarint(_pieceNumbers[model.piece(k).id()]);
+            }
+        } catch (IOException excp) {
+            throw failure(excp);
+        }
+    }
+
+    /** Record a command whose text is COMMAND, and which PARSER has just
+     *  parsed, returning KIND. */
+    void recordCommand(int kind, CommandParser parser, String command) {
+        try {
+            if (kind == CommandParser.BAD) {
+                byte[] text = command.getBytes(StandardCharsets.UTF_8);
+                _out.writeByte(BAD_COMMAND);
+                writeVarint(text.length);
+                _out.write(text);
+            } else if (kind == CommandParser.SET && isSmall(parser)) {
+                _out.writeByte(SMALL_SET);
+                _out.writeByte((parser.intArg(0) << 6)
+                               | (parser.intArg(1) << 3) | parser.intArg(2));
+            } else {
+                _out.writeByte(COMMAND + kind);
+                for (int i = 0; i < CommandParser.operands(kind); i += 1) {
+                    long v = parser.longArg(i);
+                    writeVarint((v << 1) ^ (v >> (Long.SIZE - 1)));
+                }
+            }
+        } catch (IOException excp) {
+            throw failure(excp);
+        }
+    }
+
+    /** Write all recorded data to the underlying stream. */
+    void flush() {
+        try {
+            _out.flush();
+        } catch (IOException excp) {
+            throw failure(excp);
+        }
+    }
+
+    /** Flush and close the underlying stream. */
+    void close() {
+        try {
+            _out.close();
+        } catch (IOException excp) {
+            throw failure(excp);
+        }
+    }
+
+    /** Return true iff the operands of the SET command just parsed by
+     *  PARSER fit in a SMALL_SET record. */
+    private static boolean isSmall(CommandParser parser) {
+        return parser.intArg(0) >= 0 && parser.intArg(0) < SMALL_PIECE_LIMIT
+            && parser.intArg(1) >= 0 && parser.intArg(1) < SMALL_COORD_LIMIT
+            && parser.intArg(2) >= 0 && parser.intArg(2) < SMALL_COORD_LIMIT;
+    }
+
+    /** Write a PIECE record defining PIECE as the next piece number. */
+    private void definePiece(Piece piece) throws IOException {
+        _pieceNumbers[piece.id()] = _numPieces;
+        _numPieces += 1;
+        _out.writeByte(PIECE);
+        writeVarint(piece.width());
+        writeVarint(piece.height());
+        for (int r = 0; r < piece.height(); r += 1) {
+            writeVarint(piece.rowMask(r));
+        }
+    }
+
+    /** Write the non-negative value V in as few bytes as possible: seven
+     *  bits per byte, least significant first, with the high bit of each
+     *  byte but the last set. */
+    private void writeVarint(long v) throws IOException {
+        while ((v & ~VARINT_BITS) != 0) {
+            _out.writeByte((int) (v & VARINT_BITS) | VARINT_MORE);
+            v >>>= VARINT_SHIFT;
+        }
+        _out.writeByte((int) v);
+    }
+
+    /** Return the exception to throw when output fails with EXCP. */
+    private static IllegalStateException failure(IOException excp) {
+        return new IllegalStateException("could not write replay: "
+                                         + excp.getMessage());
+    }
+
+    /** Parameters of the varint encoding: bits per byte, mask of those
+     *  bits, and continuation flag. */
+    static final int VARINT_SHIFT = 7, VARINT_BITS = 0x7f, VARINT_MORE = 0x80;
+
+    /** Destination of the record. */
+    private DataOutputStream _out;
+    /** _pieceNumbers[id] is the number in this file of the piece whose id
+     *  (see Piece.id) is ID, or -1 if it has not been defined. */
+    private int[] _pieceNumbers = new int[Piece.MAX_SHAPES];
+    /** Number of pieces defined so far. */
+    private int _numPieces;
+}
@@ -0,0 +1,292 @@
+package blocks;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.Arrays;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+/** Tests of the ReplayRecorder and ReplayPlayer classes.
+ *  @author Matilda Antwi
+ */
+public class ReplayTests {
+
+    @Rule
+    public Timeout methodTimeout = Timeout.seconds(5);
+
+    /** Check that recorded hands and commands are played back in order,
+     *  with commands in their parsed form. */
+    @Test
+    public void roundTripTest() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ReplayRecorder recorder = new ReplayRecorder(bytes, 42, 8, 9, 3);
+        CommandParser parser = new CommandParser();
+        Model model = new Model(8, 9);
+        Piece p0 = Piece.parse("*.* ***"), p1 = Piece.parse("**");
+        model.deal(p0);
+        model.deal(p1);
+        model.deal(p0);
+        recorder.recordHand(model);
+        String[] commands = {
+            "SET 2 3 1", "SET 1  7   12", "", "SEED -123456789", "UNDO",
+            "SIZE 10 10 4", "frobnicate 3", "BOARD", "QUIT"
+        };
+        String[] expected = {
+            "SET 2 3 1", "SET 1 7 12", "", "SEED -123456789", "UNDO",
+            "SIZE 10 10 4", "frobnicate 3", "BOARD", "QUIT"
+        };
+        for (int i = 0; i < commands.length; i += 1) {
+            recorder.recordCommand(parser.parse(commands[i]), parser,
+                                   commands[i]);
+            if (i == 4) {
+                model.clearHand();
+                model.deal(p1);
+                recorder.recordHand(model);
+            }
+        }
+        recorder.close();
+
+        ReplayPlayer player =
+            new ReplayPlayer(new ByteArrayInputStream(bytes.toByteArray()));
+        assertEquals(42, player.seed());
+        assertEquals(8, player.width());
+        assertEquals(9, player.height());
+        assertEquals(3, player.handSize());
+        Model replayed = new Model(8, 9);
+        assertTrue(player.deal(replayed, 1));
+        assertEquals(3, replayed.handSize());
+        assertSame(p0, replayed.piece(0));
+        assertSame(p1, replayed.piece(1));
+        assertSame(p0, replayed.piece(2));
+        for (int i = 0; i < expected.length; i += 1) {
+            if (i == 5) {
+                assertTrue(player.deal(replayed, 3));
+                assertEquals(1, replayed.handSize());
+                assertSame(p1, replayed.piece(0));
+            }
+            assertEquals(expected[i], player.getCommand());
+        }
+        assertEquals("QUIT", player.getCommand());
+        assertFalse(player.deal(replayed, 3));
+    }
+
+    /** Check that unrecognized commands too long for DataOutput.writeUTF
+     *  are recorded, played back, and skipped by a ReplayArchive. */
+    @Test
+    public void longBadCommandTest() throws IOException {
+        char[] text = new char[70000];
+        Arrays.fill(text, '\u00e9');
+        text[0] = 'x';
+        text[1] = '\0';
+        String bad = new String(text);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ReplayRecorder recorder = new ReplayRecorder(bytes, 7, 8, 8, 1);
+        CommandParser parser = new CommandParser();
+        Model model = new Model(8, 8);
+        model.deal(Piece.parse("*"));
+        recorder.recordHand(model);
+        for (String cmnd : new String[] { bad, "SET 0 2 2", "QUIT" }) {
+            recorder.recordCommand(parser.parse(cmnd), parser, cmnd);
+        }
+        recorder.close();
+
+        ReplayPlayer player =
+            new ReplayPlayer(new ByteArrayInputStream(bytes.toByteArray()));
+        assertTrue("Hand not replayed", player.deal(new Model(8, 8), 1));
+        assertEquals("Long command garbled", bad, player.getCommand());
+        assertEquals("Command after long one garbled", "SET 0 2 2",
+                     player.getCommand());
+
+        Path file = Files.createTempFile("blocks", ".replay");
+        try {
+            Files.write(file, bytes.toByteArray());
+            ReplayArchive archive = new ReplayArchive(file);
+            archive.rescore(1);
+            assertEquals("Wrong number of games", 1, archive.games());
+            assertEquals("Move after long command lost", 1,
+                         archive.moves()[0]);
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    /** Check that records out of step with the requests and files that
+     *  are not replays are rejected. */
+    @Test
+    public void badReplayTest() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ReplayRecorder recorder = new ReplayRecorder(bytes, 0, 8, 8, 3);
+        CommandParser parser = new CommandParser();
+        recorder.recordCommand(parser.parse("UNDO"), parser, "UNDO");
+        recorder.close();
+        ReplayPlayer player =
+            new ReplayPlayer(new ByteArrayInputStream(bytes.toByteArray()));
+        try {
+            player.deal(new Model(8, 8), 3);
+            fail("command accepted as a hand");
+        } catch (IllegalArgumentException excp) {
+            /* Expected. */
+        }
+        try {
+            new ReplayPlayer(new ByteArrayInputStream("H[\n]\n".getBytes()));
+            fail("text accepted as a replay");
+        } catch (IllegalArgumentException excp) {
+            /* Expected. */
+        }
+    }
+
+    /** Check that a Controller replaying a game it recorded produces the
+     *  same output as the original. */
+    @Test
+    public void controllerReplayTest() {
+        String game =
+            "H[\n0:\n  ***\n1:\n  *\n  *\n  *\n2:\n  **\n]\n"
+            + "SET 0 0 0\nBOARD\nSET 1 1 7\nUNDO\nREDO\nSET 2 5 5\n"
+            + "H[\n0:\n  *.\n  **\n1:\n  *\n2:\n  *\n]\n"
+            + "BOARD\nbogus\nSET 0 2 2\nNEW\n"
+            + "H[\n0:\n  *\n1:\n  **\n2:\n  *\n]\n"
+            + "SET 0 3 3\nBOARD\nQUIT\n";
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        TextSource text = new TextSource(new StringReader(game), null);
+        Controller original = new Controller(null, text, text, true, true);
+        original.setRecorder(new ReplayRecorder(bytes, 0, 8, 8, 3));
+        String expected = play(original);
+
+        ReplayPlayer player =
+            new ReplayPlayer(new ByteArrayInputStream(bytes.toByteArray()));
+        String replayed =
+            play(new Controller(null, player, player, true, true));
+        assertEquals(expected, replayed);
+    }
+
+    /** Check that rescoring an archive of two replays reproduces the
+     *  scores of the games recorded, including a game played with undoing
+     *  and one on a board of another size. */
+    @Test
+    public void archiveTest() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        int[] expected = new int[5];
+        ReplayRecorder recorder = new ReplayRecorder(bytes, 1, 8, 8, 3);
+        expected[0] = record(recorder, 8, 8, 1, false, "NEW");
+        expected[1] = record(recorder, 8, 8, 2, true, "SIZE 6 5 3");
+        expected[2] = record(recorder, 6, 5, 3, false, "QUIT");
+        recorder.close();
+        recorder = new ReplayRecorder(bytes, 2, 9, 9, 3);
+        expected[3] = record(recorder, 9, 9, 4, true, "QUIT");
+        recorder.close();
+        recorder = new ReplayRecorder(bytes, 3, 8, 8, 3);
+        expected[4] = recordUndoAfterNewShapes(recorder);
+        recorder.close();
+
+        Path file = Files.createTempFile("blocks", ".replay");
+        try {
+            Files.write(file, bytes.toByteArray());
+            ReplayArchive archive = new ReplayArchive(file);
+            assertEquals(5, archive.games());
+            assertEquals(6, archive.width(2));
+            assertEquals(5, archive.height(2));
+            assertEquals(ReplayRecorder.DEAL, archive.game(3).get(0));
+            archive.rescore(2);
+            assertArrayEquals(expected, archive.scores());
+            assertEquals(0, archive.rejectedMoves());
+            assertTrue(archive.moves()[0] > 0);
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    /** Record with RECORDER a game on a WIDTH x HEIGHT board with hands
+     *  dealt by a PuzzleGenerator seeded with SEED and moves chosen by a
+     *  FirstPolicy, ending with the command END.  If UNDOING, undo and
+     *  redo some moves along the way.  Returns the final score. */
+    private static int record(ReplayRecorder recorder, int width,
+                              int height, long seed, boolean undoing,
+                              String end) {
+        Model model = new Model(width, height);
+        PuzzleGenerator puzzles = new PuzzleGenerator(seed);
+        MovePolicy policy = new FirstPolicy();
+        CommandParser parser = new CommandParser();
+        puzzles.deal(model, 3);
+        model.pushState();
+        recorder.recordHand(model);
+        for (int n = 0; !model.roundOver(); n += 1) {
+            int move = policy.select(model);
+            String cmnd = Utils.msg("SET %d %d %d", Model.movePiece(move),
+                                    Model.moveRow(move),
+                                    Model.moveCol(move));
+            recorder.recordCommand(parser.parse(cmnd), parser, cmnd);
+            model.place(parser.intArg(0), parser.intArg(1),
+                        parser.intArg(2));
+            model.clearFilledLines();
+            if (model.handUsed()) {
+                puzzles.deal(model, 3);
+                recorder.recordHand(model);
+            }
+            model.pushState();
+            if (undoing && n % 3 == 2) {
+                for (String cmnd2 : new String[] { "UNDO", "UNDO", "REDO" }) {
+                    recorder.recordCommand(parser.parse(cmnd2), parser,
+                                           cmnd2);
+                }
+                model.undo();
+                model.undo();
+                model.redo();
+            }
+        }
+        recorder.recordCommand(parser.parse(end), parser, end);
+        return model.score();
+    }
+
+    /** Record with RECORDER a game on an 8x8 board in which the second
+     *  hand introduces a new shape and is immediately followed by two
+     *  undos.  Returns the final score. */
+    private static int recordUndoAfterNewShapes(ReplayRecorder recorder) {
+        Model model = new Model(8, 8);
+        CommandParser parser = new CommandParser();
+        Piece p0 = Piece.parse("*"), p1 = Piece.parse("**");
+        for (int i = 0; i < 3; i += 1) {
+            model.deal(p0);
+        }
+        model.pushState();
+        recorder.recordHand(model);
+        for (int k = 0; k < 3; k += 1) {
+            String cmnd = Utils.msg("SET %d 0 %d", k, k);
+            recorder.recordCommand(parser.parse(cmnd), parser, cmnd);
+            model.place(k, 0, k);
+            model.clearFilledLines();
+            if (model.handUsed()) {
+                model.clearHand();
+                for (int i = 0; i < 3; i += 1) {
+                    model.deal(p1);
+                }
+                recorder.recordHand(model);
+            }
+            model.pushState();
+        }
+        for (int i = 0; i < 2; i += 1) {
+            recorder.recordCommand(parser.parse("UNDO"), parser, "UNDO");
+            model.undo();
+        }
+        recorder.recordCommand(parser.parse("QUIT"), parser, "QUIT");
+        return model.score();
+    }
+
+    /** Play all puzzles with CONTROLLER, returning its output. */
+    private static String play(Controller controller) {
+        StringWriter result = new StringWriter();
+        controller.setOutput(new WriterSink(result));
+        while (controller.active()) {
+            controller.playPuzzle();
+        }
+        return result.toString();
+    }
+
+}
@@ -0,0 +1,159 @@
+package blocks;
+
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.ArrayList;
+
+import static blocks.Utils.*;
+
+/** Plays complete Blocks games without a display or text input, using a
+ *  MovePolicy to choose moves and a PuzzleGenerator to deal hands, and
+ *  reports throughput and score statistics.  Games may be played in
+ *  parallel.
+ *  @author Matilda Antwi
+ */
+class Simulator {
+
+    /** A simulator for games on WIDTH x HEIGHT boards with HANDSIZE pieces
+     *  per hand, choosing moves with the MovePolicy named POLICY (see
+     *  MovePolicy.create).  Game #i is dealt from a PuzzleGenerator seeded
+     *  with SEED + i, and its policy is seeded likewise, so that results
+     *  do not depend on the number of threads. */
+    Simulator(int width, int height, int handSize, String policy,
+              long seed) {
+        if (width <= 0 || height <= 0 || handSize <= 0) {
+            throw badArgs("improper simulation parameters");
+        }
+        if (!MovePolicy.NAMES.contains(policy)) {
+            throw badArgs("unknown move policy: %s", policy);
+        }
+        _width = width;
+        _height = height;
+        _handSize = handSize;
+        _policy = policy;
+        _seed = seed;
+    }
+
+    /** Play GAMES games using THREADS threads.  Afterwards, scores()
+     *  and moves() describe the games played. */
+    void run(int games, int threads) {
+        if (games < 0 || threads <= 0) {
+            throw badArgs("improper simulation parameters");
+        }
+        _scores = new int[games];
+        _moves = new long[games];
+        AtomicInteger next = new AtomicInteger();
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        ArrayList<Future<?>> workers = new ArrayList<>();
+        long start = System.nanoTime();
+        for (int t = 0; t < threads; t += 1) {
+            workers.add(pool.submit(() -> {
+                for (int g = next.getAndIncrement(); g < games;
+                     g = next.getAndIncrement()) {
+                    play(g);
+                }
+            }));
+        }
+        try {
+            for (Future<?> worker : workers) {
+                worker.get();
+            }
+        } catch (InterruptedException excp) {
+            throw new IllegalStateException("simulation interrupted");
+        } catch (ExecutionException excp) {
+            throw new IllegalStateException(excp.getCause().getMessage());
+        } finally {
+            pool.shutdown();
+        }
+        _elapsedNanos = System.nanoTime() - start;
+    }
+
+    /** Play game #G to completion, recording its score and number of
+     *  moves. */
+    private void play(int g) {
+        Model model = new Model(_width, _height);
+        PuzzleGenerator puzzles = new PuzzleGenerator(_seed + g);
+        MovePolicy policy = MovePolicy.create(_policy, _seed + g);
+        long moves;
+        moves = 0;
+        puzzles.deal(model, _handSize);
+        while (!model.roundOver()) {
+            int move = policy.select(model);
+            int k = Model.movePiece(move);
+            assert move >= 0 && model.placeable(k, Model.moveRow(move),
+                                                Model.moveCol(move));
+            model.place(k, Model.moveRow(move), Model.moveCol(move));
+            model.clearFilledLines();
+            if (model.handUsed()) {
+                puzzles.deal(model, _handSize);
+            }
+            moves += 1;
+        }
+        _scores[g] = model.score();
+        _moves[g] = moves;
+    }
+
+    /** Return the final scores of the games played by the last call to
+     *  run, indexed by game number. */
+    int[] scores() {
+        return _scores;
+    }
+
+    /** Return the numbers of moves in the games played by the last call
+     *  to run, indexed by game number. */
+    long[] moves() {
+        return _moves;
+    }
+
+    /** Return a printable summary of the results of the last call to
+     *  run, giving throughput and the distribution of scores. */
+    String report() {
+        int n = _scores.length;
+        double seconds = _elapsedNanos / 1e9;
+        long totalMoves = Arrays.stream(_moves).sum();
+        StringBuilder out = new StringBuilder();
+        out.append(msg("Policy %s on %dx%d board, hand size %d%n",
+                       _policy, _width, _height, _handSize));
+        out.append(msg("Games: %d  Moves: %d  Time: %.3f s%n",
+                       n, totalMoves, seconds));
+        out.append(msg("Throughput: %.1f games/s, %.1f moves/s%n",
+                       n / seconds, totalMoves / seconds));
+        out.append(scoreSummary(_scores));
+        return out.toString();
+    }
+
+    /** Return a printable line summarizing the distribution of SCORES,
+     *  or the empty string if there are none. */
+    static String scoreSummary(int[] scores) {
+        int n = scores.length;
+        if (n == 0) {
+            return "";
+        }
+        int[] sorted = scores.clone();
+        Arrays.sort(sorted);
+        double mean = Arrays.stream(sorted).average().orElse(0);
+        double var = Arrays.stream(sorted)
+            .mapToDouble(x -> (x - mean) * (x - mean)).sum() / n;
+        return msg("Score: mean %.1f  std dev %.1f  min %d  p10 %d  "
+                   + "median %d  p90 %d  max %d%n",
+                   mean, Math.sqrt(var), sorted[0], sorted[n / 10],
+                   sorted[n / 2], sorted[n * 9 / 10], sorted[n - 1]);
+    }
+
+    /** Board dimensions and hand size. */
+    private int _width, _height, _handSize;
+    /** Name of the MovePolicy used. */
+    private String _policy;
+    /** Base seed for puzzles and policies. */
+    private long _seed;
+    /** Final score and number of moves of each game. */
+    private int[] _scores = new int[0];
+    /** Number of moves of each game. */
+    private long[] _moves = new long[0];
+    /** Duration of the last run, in nanoseconds. */
+    private long _elapsedNanos;
+}
@@ -0,0 +1,189 @@
+package blocks;
+
+import java.util.HashSet;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+/** Tests of the Simulator class and of move policies.
+ *  @author Matilda Antwi
+ */
+public class SimulatorTests {
+
+    @Rule
+    public Timeout methodTimeout = Timeout.seconds(10);
+
+    /** Check that the results of a simulation do not depend on the number
+     *  of threads used. */
+    @Test
+    public void threadsTest() {
+        Simulator sim1 = new Simulator(6, 6, 3, "random", 17),
+            sim4 = new Simulator(6, 6, 3, "random", 17);
+        sim1.run(40, 1);
+        sim4.run(40, 4);
+        assertArrayEquals("Scores depend on threads",
+                          sim1.scores(), sim4.scores());
+        assertArrayEquals("Move counts depend on threads",
+                          sim1.moves(), sim4.moves());
+        for (int g = 0; g < 40; g += 1) {
+            assertTrue("Game has no moves", sim1.moves()[g] > 0);
+            assertTrue("Score too low", sim1.scores()[g] > 0);
+        }
+    }
+
+    /** Check that policies choose only legal moves, and report when there
+     *  are none, and that a Simulator rejects unknown policies. */
+    @Test
+    public void policyTest() {
+        for (String name : MovePolicy.NAMES) {
+            MovePolicy policy = MovePolicy.create(name, 3);
+            Model m = new Model(3, 3);
+            m.deal(new Piece("** **"));
+            m.deal(new Piece("***"));
+            int move = policy.select(m);
+            assertTrue(name + " chose illegal move",
+                       m.placeable(Model.movePiece(move), Model.moveRow(move),
+                                   Model.moveCol(move)));
+            m.place(0, 1, 1);
+            m.place(1, 0, 0);
+            assertEquals(name + " chose a move with none available",
+                         -1, policy.select(m));
+        }
+        try {
+            new Simulator(6, 6, 3, "bogus", 17);
+            fail("unknown policy accepted");
+        } catch (IllegalArgumentException excp) {
+            /* Expected. */
+        }
+    }
+
+    /** Check that the greedy policy prefers a move that clears a line,
+     *  and that looking ahead finds a pair of moves that clears two. */
+    @Test
+    public void greedyTest() {
+        Model m = new Model(4, 4);
+        m.place(new Piece("***"), 0, 0);
+        m.place(new Piece("*** ***"), 2, 0);
+        m.deal(new Piece("*"));
+        int move = new GreedyPolicy(1).select(m);
+        assertEquals("greedy did not clear row", Model.move(0, 0, 3), move);
+
+        m = new Model(4, 4);
+        m.place(new Piece("** **"), 0, 0);
+        m.deal(new Piece("* *"));
+        m.deal(new Piece("* *"));
+        GreedyPolicy policy = new GreedyPolicy(2);
+        GreedyPolicy.makeMove(m, policy.select(m));
+        GreedyPolicy.makeMove(m, policy.select(m));
+        assertEquals("lookahead did not clear two rows", 0,
+                     m.rowCount(0) + m.rowCount(1));
+    }
+
+    /** Check that the expectimax solver plans over the whole hand, and
+     *  that its results do not depend on the number of threads. */
+    @Test
+    public void expectimaxTest() {
+        Model m = new Model(4, 4);
+        m.place(new Piece("** **"), 0, 0);
+        m.deal(new Piece("* *"));
+        m.deal(new Piece("* *"));
+        ExpectimaxSolver solver = new ExpectimaxSolver(1, 1, 0, 5);
+        GreedyPolicy.makeMove(m, solver.select(m));
+        assertEquals(1, solver.depthReached());
+        GreedyPolicy.makeMove(m, solver.select(m));
+        assertEquals("solver did not clear two rows", 0,
+                     m.rowCount(0) + m.rowCount(1));
+
+        double[] values = new double[2];
+        int[] moves = new int[2];
+        for (int i = 0; i < 2; i += 1) {
+            m = new Model(5, 5);
+            m.place(new Piece("*** ***"), 0, 0);
+            m.deal(new Piece("**"));
+            m.deal(new Piece("* *"));
+            solver = new ExpectimaxSolver(2, 3, 0, 5,
+                                          new ForkJoinPool(1 + 3 * i));
+            moves[i] = solver.select(m);
+            values[i] = solver.value();
+            assertEquals(2, solver.depthReached());
+        }
+        assertEquals("move depends on threads", moves[0], moves[1]);
+        assertEquals("value depends on threads", values[0], values[1], 1e-9);
+    }
+
+    /** Check that the expectimax transposition table is hit by the same
+     *  pieces placed in different orders, and by nothing else. */
+    @Test
+    public void transpositionTest() {
+        Model m = new Model(5, 5);
+        m.deal(new Piece("*"));
+        m.deal(new Piece("**"));
+        m.deal(new Piece("* *"));
+        int[] firsts = GreedyPolicy.legalMoves(m);
+        HashSet<String> seconds = new HashSet<>();
+        int sequences;
+        sequences = 0;
+        for (int first : firsts) {
+            Model m1 = m.fork();
+            GreedyPolicy.makeMove(m1, first);
+            for (int second : GreedyPolicy.legalMoves(m1)) {
+                Model m2 = m1.fork();
+                GreedyPolicy.makeMove(m2, second);
+                seconds.add(m2.toString());
+                sequences += 1;
+            }
+        }
+        ExpectimaxSolver solver =
+            new ExpectimaxSolver(1, 1, 0, 5, new ForkJoinPool(1));
+        solver.select(m);
+        assertEquals("wrong number of positions in table",
+                     firsts.length + seconds.size(), solver.tableSize());
+        assertEquals("wrong number of table hits",
+                     sequences - seconds.size(), solver.tableHits());
+
+        Model empty = new Model(5, 5), corner = new Model(5, 5);
+        corner.place(new Piece("*"), 0, 0);
+        assertNotEquals("different boards share a key",
+                        ExpectimaxSolver.key(empty, 1),
+                        ExpectimaxSolver.key(corner, 1));
+    }
+
+    /** Check that Monte Carlo tree search finds a move that clears two
+     *  lines, and performs the requested number of playouts. */
+    @Test
+    public void mctsTest() {
+        Model m = new Model(4, 4);
+        m.place(new Piece("** **"), 0, 0);
+        m.deal(new Piece("* *"));
+        m.deal(new Piece("* *"));
+        MctsPolicy policy =
+            new MctsPolicy(0, 3000, 2, 7, new ForkJoinPool(2));
+        int move = policy.select(m);
+        assertEquals("wrong number of playouts", 6000, policy.playouts());
+        GreedyPolicy.makeMove(m, move);
+        GreedyPolicy.makeMove(m, policy.select(m));
+        assertEquals("search did not clear two rows", 0,
+                     m.rowCount(0) + m.rowCount(1));
+    }
+
+    /** Check that a PolicySource issues legal SET commands and ends
+     *  rounds as requested. */
+    @Test
+    public void policySourceTest() {
+        PolicySource src = new PolicySource(new FirstPolicy(), null, 2);
+        Model m = new Model(3, 3);
+        m.deal(new Piece("***"));
+        src.update(m);
+        assertEquals("SET 0 0 0", src.getCommand());
+        m.place(0, 0, 0);
+        src.update(m);
+        assertEquals("NEW", src.getCommand());
+        src.update(new Model(3, 3));
+        assertEquals("QUIT", src.getCommand());
+        assertEquals(2, src.roundsPlayed());
+    }
+
+}
@@ -1,22 +1,30 @@
 package blocks;
 
-import java.util.Scanner;
-import java.util.NoSuchElementException;
-import java.util.regex.Pattern;
+import java.io.IOException;
+import java.io.Reader;
 
 import static blocks.Utils.*;
 
 /** A type of CommandSource and PuzzleSource that receives commands and
- *  puzzles from a Scanner. This kind of source is intended for testing and
+ *  puzzles from a Reader. This kind of source is intended for testing and
  *  manual command input.
+ *
+ *  The input is scanned a character at a time from a buffer, which is
+ *  much faster on large inputs than a Scanner with regular-expression
+ *  delimiters, but treats the input just as the Scanner-based version
+ *  did.  Input is divided into words by delimiters: whitespace
+ *  characters and the characters "(", ",", and ")".  A command is the
+ *  rest of the current line; in particular, the line ending a hand
+ *  supplies an (empty) command.  A hand is the word "H[", followed by
+ *  pieces of the form "N: ROWS", where ROWS is a sequence of rows of
+ *  "*" and "." separated by whitespace, and then the word "]".
  *  @author P. N. Hilfinger
  */
 class TextSource implements CommandSource, PuzzleSource {
 
     /** Provides commands and puzzles from SOURCE.  Prompts for input with
      *  PROMPT, if non-null. */
-    TextSource(Scanner source, String prompt) {
-        source.useDelimiter("[ \t\n\r(,)]+");
+    TextSource(Reader source, String prompt) {
         _prompt = prompt;
         _source = source;
     }
@@ -30,25 +38,21 @@ class TextSource implements CommandSource, PuzzleSource {
                 System.out.print(_prompt);
                 System.out.flush();
             }
-            if (!_source.hasNext()) {
+            if (!hasNext()) {
                 return "QUIT";
             }
-            String line = _source.nextLine().trim().toUpperCase();
+            String line = nextLine();
             if (!line.startsWith("#")) {
                 return line;
             }
         }
     }
 
-    /** Prefix of a hand on test input. */
-    static final Pattern HAND_START_PATTERN = Pattern.compile("H\\[");
-
-    /** End delimiter of a hand of test input. */
-    static final Pattern HAND_END_PATTERN = Pattern.compile("\\]");
-
-    /** Format for a piece. */
-    static final Pattern PIECE_PATTERN =
-        Pattern.compile("\\G\\s*(\\d+):([\\s*.]+)");
+    /** Returns true iff I prompt for commands. */
+    @Override
+    public boolean interactive() {
+        return _prompt != null;
+    }
 
     /** Create a model initialized to a puzzle.  Returns true on success
      *  and false if at the end of the test source.  Throws
@@ -58,33 +62,216 @@ class TextSource implements CommandSource, PuzzleSource {
     @Override
     public boolean deal(Model model, int handSize) {
         model.clearHand();
-        try {
-            if (!_source.hasNext()) {
+        if (!hasNext()) {
+            return false;
+        }
+        if (!nextWordIs(HAND_START)) {
+            throw badArgs("expected hand not available or malformed");
+        }
+        for (int i = 0; i < handSize; i += 1) {
+            model.deal(nextPiece());
+        }
+        if (!nextWordIs(HAND_END)) {
+            throw badArgs("expected hand not available or malformed");
+        }
+        return true;
+    }
+
+    @Override
+    public void setSeed(long seed) {
+        _randomPuzzler.setSeed(seed);
+    }
+
+    /** Return true iff there is a word (a non-delimiter character) in the
+     *  remaining input.  Does not consume any input. */
+    private boolean hasNext() {
+        for (int k = 0; true; k += 1) {
+            int c = peek(k);
+            if (c == EOF) {
                 return false;
+            } else if (!isDelimiter(c)) {
+                return true;
             }
+        }
+    }
 
-            _source.next(HAND_START_PATTERN);
-            for (int i = 0; i < handSize; i += 1) {
-                if (_source.findWithinHorizon(PIECE_PATTERN, 0) != null) {
-                    model.deal(new Piece(_source.match().group(2)));
-                } else {
-                    throw badArgs("missing or badly formed piece");
+    /** Consume and return the rest of the current line, without its line
+     *  terminator, trimmed of leading and trailing whitespace and converted
+     *  to upper case. */
+    private String nextLine() {
+        _line.setLength(0);
+        while (true) {
+            int c = peek(0);
+            if (c == EOF) {
+                break;
+            }
+            _pos += 1;
+            if (c == '\r') {
+                if (peek(0) == '\n') {
+                    _pos += 1;
                 }
+                break;
+            } else if (isLineTerminator(c)) {
+                break;
             }
-            _source.next(HAND_END_PATTERN);
-            return true;
-        } catch (NoSuchElementException excp) {
-            throw badArgs("expected hand not available or malformed");
+            _line.append((char) c);
+        }
+        int start, end;
+        start = 0;
+        end = _line.length();
+        while (start < end && _line.charAt(start) <= ' ') {
+            start += 1;
         }
+        while (end > start && _line.charAt(end - 1) <= ' ') {
+            end -= 1;
+        }
+        for (int i = start; i < end; i += 1) {
+            _line.setCharAt(i, Character.toUpperCase(_line.charAt(i)));
+        }
+        return _line.substring(start, end);
     }
 
-    @Override
-    public void setSeed(long seed) {
-        _randomPuzzler.setSeed(seed);
+    /** Skip any delimiters and then consume the next word, returning true
+     *  iff it is WORD. */
+    private boolean nextWordIs(String word) {
+        while (peek(0) != EOF && isDelimiter(peek(0))) {
+            _pos += 1;
+        }
+        int k;
+        for (k = 0; peek(k) != EOF && !isDelimiter(peek(k)); k += 1) {
+            if (k >= word.length() || peek(k) != word.charAt(k)) {
+                return false;
+            }
+        }
+        if (k != word.length()) {
+            return false;
+        }
+        _pos += k;
+        return true;
+    }
+
+    /** Consume and return the next piece, which has the form of optional
+     *  whitespace, a numeral, a colon, and one or more whitespace, "*", or
+     *  "." characters. */
+    private Piece nextPiece() {
+        int k;
+        k = 0;
+        while (isWhitespace(peek(k))) {
+            k += 1;
+        }
+        int digits = k;
+        while (peek(k) >= '0' && peek(k) <= '9') {
+            k += 1;
+        }
+        if (k == digits || peek(k) != ':') {
+            throw badArgs("missing or badly formed piece");
+        }
+        k += 1;
+        int rows = k;
+        _line.setLength(0);
+        boolean rowEnded = false;
+        for (int c = peek(k); c == '*' || c == '.' || isWhitespace(c);
+             k += 1, c = peek(k)) {
+            if (isWhitespace(c)) {
+                rowEnded = true;
+            } else {
+                if (rowEnded && _line.length() > 0) {
+                    _line.append(' ');
+                }
+                rowEnded = false;
+                _line.append((char) c);
+            }
+        }
+        if (k == rows) {
+            throw badArgs("missing or badly formed piece");
+        }
+        _pos += k;
+        return Piece.parse(_line.toString());
+    }
+
+    /** Return the character K positions beyond the next unconsumed
+     *  character of input, or EOF if there is none.  Reads more input as
+     *  needed. */
+    private int peek(int k) {
+        while (_pos + k >= _limit) {
+            if (_eof) {
+                return EOF;
+            }
+            fill(k + 1);
+        }
+        return _buffer[_pos + k];
+    }
+
+    /** Read more input into _buffer, making room for at least N
+     *  unconsumed characters.  Sets _eof at the end of input.  As for a
+     *  Scanner, an IOException is treated as the end of input. */
+    private void fill(int n) {
+        if (_pos > 0) {
+            System.arraycopy(_buffer, _pos, _buffer, 0, _limit - _pos);
+            _limit -= _pos;
+            _pos = 0;
+        }
+        if (n > _buffer.length - 1) {
+            char[] buffer = new char[Math.max(n + 1, 2 * _buffer.length)];
+            System.arraycopy(_buffer, 0, buffer, 0, _limit);
+            _buffer = buffer;
+        }
+        try {
+            int len = _source.read(_buffer, _limit, _buffer.length - _limit);
+            if (len < 0) {
+                _eof = true;
+            } else {
+                _limit += len;
+            }
+        } catch (IOException excp) {
+            _eof = true;
+        }
+    }
+
+    /** Return true iff C separates words of input. */
+    private static boolean isDelimiter(int c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\r'
+            || c == '(' || c == ',' || c == ')';
     }
 
+    /** Return true iff C is a whitespace character (as for \s in a regular
+     *  expression). */
+    private static boolean isWhitespace(int c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\r'
+            || c == '\u000b' || c == '\f';
+    }
+
+    /** Return true iff C ends a line (other than '\r', which may be part
+     *  of a two-character terminator). */
+    private static boolean isLineTerminator(int c) {
+        return c == '\n' || c == '\u0085' || c == '\u2028' || c == '\u2029';
+    }
+
+    /** The word that begins a hand of test input. */
+    static final String HAND_START = "H[";
+
+    /** The word that ends a hand of test input. */
+    static final String HAND_END = "]";
+
+    /** Value returned by peek at the end of input. */
+    private static final int EOF = -1;
+
+    /** Initial size of the input buffer. */
+    private static final int BUFFER_SIZE = 1 << 16;
+
     /** Input source. */
-    private Scanner _source;
+    private Reader _source;
+    /** Input read from _source.  _buffer[_pos .. _limit-1] have not yet
+     *  been consumed. */
+    private char[] _buffer = new char[BUFFER_SIZE];
+    /** Position of the next unconsumed character in _buffer. */
+    private int _pos;
+    /** Number of valid characters in _buffer. */
+    private int _limit;
+    /** True iff _source is exhausted. */
+    private boolean _eof;
+    /** Holds the current line or piece. */
+    private StringBuilder _line = new StringBuilder();
     /** Input prompt. */
     private String _prompt;
     /** Source for random puzzles. */
@@ -10,9 +10,14 @@ public class UnitTests {
     /** Run the JUnit tests in this package. Add xxxTest.class entries to
      *  the arguments of runClasses to run other JUnit tests. */
     public static void main(String[] ignored) {
-        System.exit(textui.runClasses(ModelTests.class,
+        System.exit(textui.runClasses(CommandParserTests.class,
+                                      ControllerTests.class,
+                                      ModelTests.class,
                                       PieceTests.class,
-                                      PuzzleGeneratorTests.class));
+                                      PuzzleGeneratorTests.class,
+                                      ReplayTests.class,
+                                      SimulatorTests.class,
+                                      WriterSinkTests.class));
     }
 
 }
@@ -83,6 +83,15 @@ class Utils {
         return result;
     }
 
+    /** Return a pseudo-random function of X: a bijection on longs that
+     *  scatters nearby arguments widely (the finalizer of the SplitMix64
+     *  generator).  Suitable for generating hash keys. */
+    static long mix(long x) {
+        x = (x ^ (x >>> 30)) * 0xbf58476d1ce4e5b9L;
+        x = (x ^ (x >>> 27)) * 0x94d049bb133111ebL;
+        return x ^ (x >>> 31);
+    }
+
     /** Return integer denoted by NUMERAL. */
     static int toInt(String numeral) {
         return Integer.parseInt(numeral);
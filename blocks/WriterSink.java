@@ -0,0 +1,104 @@
+package blocks;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/** An OutputSink that collects text in a large buffer and delivers it to
+ *  a Writer only when the buffer fills or on flush, so that producing
+ *  many small pieces of output costs few writes.  Not safe for use by
+ *  several threads at once.
+ *  @author Matilda Antwi
+ */
+class WriterSink implements OutputSink {
+
+    /** Default buffer size, in characters. */
+    static final int DEFAULT_SIZE = 1 << 16;
+
+    /** A sink writing to OUT through a buffer of SIZE > 0 characters. */
+    WriterSink(Writer out, int size) {
+        if (size <= 0) {
+            throw Utils.badArgs("buffer size must be positive");
+        }
+        _out = out;
+        _buffer = new char[size];
+    }
+
+    /** A sink writing to OUT through a buffer of DEFAULT_SIZE
+     *  characters. */
+    WriterSink(Writer out) {
+        this(out, DEFAULT_SIZE);
+    }
+
+    @Override
+    public void append(CharSequence text) {
+        int len = text.length();
+        if (len > _buffer.length - _count) {
+            drain();
+            if (len > _buffer.length) {
+                write(text.toString());
+                return;
+            }
+        }
+        if (text instanceof String) {
+            ((String) text).getChars(0, len, _buffer, _count);
+        } else {
+            for (int i = 0; i < len; i += 1) {
+                _buffer[_count + i] = text.charAt(i);
+            }
+        }
+        _count += len;
+    }
+
+    @Override
+    public void append(char c) {
+        if (_count == _buffer.length) {
+            drain();
+        }
+        _buffer[_count] = c;
+        _count += 1;
+    }
+
+    @Override
+    public void flush() {
+        drain();
+        try {
+            _out.flush();
+        } catch (IOException excp) {
+            throw failure(excp);
+        }
+    }
+
+    /** Write the contents of the buffer to _out and empty it. */
+    private void drain() {
+        if (_count > 0) {
+            try {
+                _out.write(_buffer, 0, _count);
+            } catch (IOException excp) {
+                throw failure(excp);
+            }
+            _count = 0;
+        }
+    }
+
+    /** Write TEXT directly to _out. */
+    private void write(String text) {
+        try {
+            _out.write(text);
+        } catch (IOException excp) {
+            throw failure(excp);
+        }
+    }
+
+    /** Return the exception to throw when output fails with EXCP. */
+    private static IllegalStateException failure(IOException excp) {
+        return new IllegalStateException("could not write output: "
+                                         + excp.getMessage());
+    }
+
+    /** Final destination of output. */
+    private Writer _out;
+    /** Output not yet delivered is _buffer[0 .. _count-1]. */
+    private char[] _buffer;
+    /** Number of characters in _buffer. */
+    private int _count;
+}
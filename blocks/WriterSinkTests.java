@@ -0,0 +1,38 @@
+package blocks;
+
+import java.io.StringWriter;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+/** Tests of the WriterSink class.
+ *  @author Matilda Antwi
+ */
+public class WriterSinkTests {
+
+    @Rule
+    public Timeout methodTimeout = Timeout.seconds(1);
+
+    /** Check that output is held until the buffer fills or is flushed,
+     *  and is delivered intact and in order. */
+    @Test
+    public void bufferTest() {
+        StringWriter dest = new StringWriter();
+        WriterSink sink = new WriterSink(dest, 8);
+        sink.append("abc");
+        sink.append('d');
+        assertEquals("Output not buffered", "", dest.toString());
+        sink.append(new StringBuilder("efghij"));
+        assertEquals("Full buffer not written", "abcd", dest.toString());
+        sink.append("0123456789ABCDEF");
+        assertEquals("abcdefghij0123456789ABCDEF", dest.toString());
+        sink.append("xy");
+        sink.newLine();
+        sink.flush();
+        assertEquals("abcdefghij0123456789ABCDEFxy" + System.lineSeparator(),
+                     dest.toString());
+    }
+
+}